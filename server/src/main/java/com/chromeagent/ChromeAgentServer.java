@@ -18,6 +18,7 @@ import org.slf4j.LoggerFactory;
  * - HEARTBEAT_INTERVAL_SECONDS: Heartbeat interval (default: 10)
  * - SESSION_RETENTION_SECONDS: Session retention after disconnect (default: 30)
  * - COMMAND_TIMEOUT_SECONDS: Command execution timeout (default: 30)
+ * - NETTY_TRANSPORT: Netty transport - auto, nio, epoll, io_uring (default: auto)
  */
 public class ChromeAgentServer {
     private static final Logger logger = LoggerFactory.getLogger(ChromeAgentServer.class);
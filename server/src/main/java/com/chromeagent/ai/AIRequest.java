@@ -0,0 +1,178 @@
+package com.chromeagent.ai;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A natural language request to the AI service, with the context it was
+ * made in.
+ */
+public class AIRequest {
+    private static final Listener NO_LISTENER = new Listener() { };
+
+    private final String prompt;
+    private final String pageDomain;
+    private final boolean bypassCache;
+    private final Listener listener;
+    private final String model;
+    private final List<Exchange> history;
+
+    public AIRequest(String prompt, String pageDomain, boolean bypassCache) {
+        this(prompt, pageDomain, bypassCache, null);
+    }
+
+    public AIRequest(String prompt, String pageDomain, boolean bypassCache, Listener listener) {
+        this(prompt, pageDomain, bypassCache, OnceListener.of(listener), null, List.of());
+    }
+
+    /**
+     * @param listener Already wrapped by OnceListener.of; shared by copies
+     */
+    private AIRequest(String prompt, String pageDomain, boolean bypassCache, Listener listener,
+                      String model, List<Exchange> history) {
+        this.prompt = prompt;
+        this.pageDomain = pageDomain;
+        this.bypassCache = bypassCache;
+        this.listener = listener;
+        this.model = model;
+        this.history = history != null ? List.copyOf(history) : List.of();
+    }
+
+    public static AIRequest of(String prompt) {
+        return new AIRequest(prompt, null, false);
+    }
+
+    /**
+     * Get a copy of this request reporting progress to the given listener.
+     */
+    public AIRequest withListener(Listener listener) {
+        return new AIRequest(prompt, pageDomain, bypassCache, OnceListener.of(listener), model, history);
+    }
+
+    /**
+     * Get a copy of this request to be answered by the given model.
+     */
+    public AIRequest withModel(String model) {
+        return new AIRequest(prompt, pageDomain, bypassCache, listener, model, history);
+    }
+
+    /**
+     * Get a copy of this request sent after the given earlier exchanges.
+     */
+    public AIRequest withHistory(List<Exchange> history) {
+        return new AIRequest(prompt, pageDomain, bypassCache, listener, model, history);
+    }
+
+    public String getPrompt() {
+        return prompt;
+    }
+
+    /**
+     * Domain of the page the user is on, if the client reported it.
+     */
+    public String getPageDomain() {
+        return pageDomain;
+    }
+
+    /**
+     * Whether a cached result must not be used for this request.
+     */
+    public boolean isBypassCache() {
+        return bypassCache;
+    }
+
+    /**
+     * Receives progress before the final result (streaming mode only).
+     */
+    public Listener getListener() {
+        return listener;
+    }
+
+    /**
+     * Model to use instead of the service's default, or null.
+     */
+    public String getModel() {
+        return model;
+    }
+
+    /**
+     * Earlier exchanges of the conversation, oldest first; empty if none.
+     */
+    public List<Exchange> getHistory() {
+        return history;
+    }
+
+    @Override
+    public String toString() {
+        return "AIRequest{" +
+                "prompt='" + prompt + '\'' +
+                ", pageDomain='" + pageDomain + '\'' +
+                ", bypassCache=" + bypassCache +
+                ", model='" + model + '\'' +
+                ", history=" + history.size() +
+                '}';
+    }
+
+    /**
+     * One earlier prompt and the reply it got.
+     */
+    public static final class Exchange {
+        private final String prompt;
+        private final String reply;
+
+        public Exchange(String prompt, String reply) {
+            this.prompt = prompt;
+            this.reply = reply;
+        }
+
+        public String getPrompt() {
+            return prompt;
+        }
+
+        public String getReply() {
+            return reply;
+        }
+    }
+
+    /**
+     * Progress callbacks for a request in flight. Called on the AI client's
+     * threads; implementations must not block.
+     */
+    public interface Listener {
+        /**
+         * The model has chosen the command; its parameters are still being
+         * generated. Called at most once per request, even when the request
+         * is retried, hedged or escalated to another model.
+         */
+        default void onCommandSelected(String command) {
+        }
+    }
+
+    /**
+     * Passes onCommandSelected on to a listener the first time only. Copies
+     * of a request (withModel, withHistory) share it, so every attempt made
+     * for the request reports to the same guard.
+     */
+    private static final class OnceListener implements Listener {
+        private final Listener listener;
+        private final AtomicBoolean selected = new AtomicBoolean();
+
+        private OnceListener(Listener listener) {
+            this.listener = listener;
+        }
+
+        static Listener of(Listener listener) {
+            if (listener == null) {
+                return NO_LISTENER;
+            }
+            return listener instanceof OnceListener ? listener : new OnceListener(listener);
+        }
+
+        @Override
+        public void onCommandSelected(String command) {
+            if (selected.compareAndSet(false, true)) {
+                listener.onCommandSelected(command);
+            }
+        }
+    }
+}
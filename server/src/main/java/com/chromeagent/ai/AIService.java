@@ -2,6 +2,8 @@ package com.chromeagent.ai;
 
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for AI service operations.
  */
@@ -15,4 +17,45 @@ public interface AIService {
      *         - On error: {"error": "error message"}
      */
     ObjectNode processNaturalLanguage(String prompt);
+
+    /**
+     * Process a natural language prompt without blocking the caller.
+     * Failures are reported as an {"error": ...} result, like the blocking variant.
+     * Implementations run the call on their own executor, never the common pool.
+     *
+     * @param prompt Natural language input from the user
+     * @return Future completed with the same result as processNaturalLanguage
+     */
+    CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt);
+
+    /**
+     * Process a request with its context without blocking the caller.
+     * Implementations that do not use the context process the prompt alone.
+     *
+     * @param request Prompt plus context (page domain, cache bypass)
+     * @return Future completed with the same result as processNaturalLanguage
+     */
+    default CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+        return processNaturalLanguageAsync(request.getPrompt());
+    }
+
+    /**
+     * Get the number of AI calls currently in flight.
+     */
+    default int getRunningCallCount() {
+        return 0;
+    }
+
+    /**
+     * Get the number of AI calls waiting for a free slot.
+     */
+    default int getQueuedCallCount() {
+        return 0;
+    }
+
+    /**
+     * Release resources (connections, threads).
+     */
+    default void shutdown() {
+    }
 }
@@ -0,0 +1,110 @@
+package com.chromeagent.ai;
+
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side token bucket for the Claude API.
+ *
+ * The rate is learned from the anthropic-ratelimit-requests-* response
+ * headers; until the first such header arrives calls are not limited. A
+ * 429's retry-after pauses all calls, not just the one that was refused.
+ */
+class ApiRateLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(ApiRateLimiter.class);
+    private static final String LIMIT_HEADER = "anthropic-ratelimit-requests-limit";
+    private static final String REMAINING_HEADER = "anthropic-ratelimit-requests-remaining";
+
+    /** Tokens per nanosecond; 0 means no limit is known yet. */
+    private double rate;
+    private double capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long pausedUntil;
+    private boolean paused;
+
+    /**
+     * Take a permit, waiting for it if necessary.
+     *
+     * @param maxWaitMillis Longest acceptable wait
+     * @return Milliseconds to wait before calling, or -1 (nothing taken) if
+     *         the wait would exceed maxWaitMillis
+     */
+    synchronized long reserve(long maxWaitMillis) {
+        long now = System.nanoTime();
+        long waitNanos = paused ? Math.max(0, pausedUntil - now) : 0;
+
+        if (rate > 0) {
+            refill(now);
+            if (tokens < 1) {
+                waitNanos = Math.max(waitNanos, (long) ((1 - tokens) / rate));
+            }
+        }
+
+        long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos);
+        if (waitMillis > maxWaitMillis) {
+            return -1;
+        }
+        if (rate > 0) {
+            tokens -= 1; // may go negative: later callers queue behind this one
+        }
+        return waitMillis;
+    }
+
+    /**
+     * Tune the bucket from a response's rate limit headers.
+     */
+    synchronized void update(Response response) {
+        Long limit = parseLong(response.header(LIMIT_HEADER));
+        if (limit == null || limit <= 0) {
+            return;
+        }
+        double newRate = limit / (double) TimeUnit.MINUTES.toNanos(1);
+        if (newRate != rate) {
+            logger.info("Claude API request limit: {}/min", limit);
+        }
+        refill(System.nanoTime());
+        if (rate == 0) {
+            tokens = limit; // first limit seen: start full
+        }
+        rate = newRate;
+        capacity = limit;
+
+        Long remaining = parseLong(response.header(REMAINING_HEADER));
+        if (remaining != null) {
+            tokens = Math.min(tokens, remaining);
+        }
+    }
+
+    /**
+     * Stop all calls for the given time (a 429's retry-after).
+     */
+    synchronized void pause(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (!paused || until - pausedUntil > 0) {
+            pausedUntil = until;
+            paused = true;
+        }
+    }
+
+    private void refill(long now) {
+        if (rate > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate);
+        }
+        lastRefill = now;
+    }
+
+    private static Long parseLong(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
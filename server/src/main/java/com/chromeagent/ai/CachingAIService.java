@@ -0,0 +1,236 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Caches prompt-to-command results in front of another AIService.
+ *
+ * Keys are the normalized prompt plus the page domain. Requests that carry
+ * conversation history bypass the cache, counted as neither hit nor miss:
+ * a follow-up only means the same thing after the same conversation, and
+ * two sessions practically never share one. Entries expire after a TTL and
+ * the least recently used entry is evicted at capacity. Error results are
+ * never cached.
+ * Concurrent identical requests share one upstream call (single-flight);
+ * every caller's listener hears the call's progress, late joiners included.
+ */
+public class CachingAIService implements AIService {
+    private static final Logger logger = LoggerFactory.getLogger(CachingAIService.class);
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCTUATION = Pattern.compile("[.!?]+$");
+
+    private final AIService delegate;
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final Map<String, CacheEntry> entries;
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public CachingAIService(AIService delegate, ServerConfig config) {
+        this.delegate = delegate;
+        this.maxEntries = config.getAiCacheMaxEntries();
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(config.getAiCacheTtlSeconds());
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+
+        logger.info("AI result cache enabled (max entries: {}, ttl: {}s)",
+                maxEntries, config.getAiCacheTtlSeconds());
+    }
+
+    @Override
+    public ObjectNode processNaturalLanguage(String prompt) {
+        return processAsync(AIRequest.of(prompt)).join();
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+        return processAsync(AIRequest.of(prompt));
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+        if (request.isBypassCache() || !request.getHistory().isEmpty()) {
+            return delegate.processAsync(request);
+        }
+
+        String key = cacheKey(request);
+        ObjectNode cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            logger.debug("AI cache hit for prompt: {}", request.getPrompt());
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        // Single-flight: join an identical call already in progress
+        boolean[] started = new boolean[1];
+        Flight flight = inFlight.computeIfAbsent(key, k -> {
+            started[0] = true;
+            return new Flight();
+        });
+        flight.join(request.getListener());
+        CompletableFuture<ObjectNode> call = flight.result;
+        if (!started[0]) {
+            coalesced.increment();
+            logger.debug("AI call joined in-flight request for prompt: {}", request.getPrompt());
+            return call.thenApply(ObjectNode::deepCopy);
+        }
+
+        misses.increment();
+        CompletableFuture<ObjectNode> upstream;
+        try {
+            upstream = delegate.processAsync(request.withListener(flight));
+        } catch (RuntimeException e) {
+            upstream = CompletableFuture.failedFuture(e);
+        }
+        upstream.whenComplete((result, error) -> {
+            if (error == null && result != null && !result.has("error")) {
+                store(key, result);
+            }
+            inFlight.remove(key, flight);
+            if (error != null) {
+                call.completeExceptionally(error);
+            } else {
+                call.complete(result);
+            }
+        });
+        return call.thenApply(ObjectNode::deepCopy);
+    }
+
+    private ObjectNode lookup(String key) {
+        synchronized (entries) {
+            CacheEntry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.storedAt > ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.result.deepCopy();
+        }
+    }
+
+    private void store(String key, ObjectNode result) {
+        synchronized (entries) {
+            entries.put(key, new CacheEntry(result.deepCopy(), System.nanoTime()));
+        }
+    }
+
+    /**
+     * Normalize a request into a cache key: surrounding and repeated
+     * whitespace and trailing punctuation do not change the command. Case
+     * does: selectors and text to type are case-sensitive.
+     */
+    static String cacheKey(AIRequest request) {
+        String domain = request.getPageDomain() == null ? "" : request.getPageDomain().toLowerCase(Locale.ROOT);
+        return domain + '\n' + normalizePrompt(request.getPrompt());
+    }
+
+    static String normalizePrompt(String prompt) {
+        String normalized = prompt == null ? "" : prompt.trim();
+        return TRAILING_PUNCTUATION.matcher(WHITESPACE.matcher(normalized).replaceAll(" ")).replaceAll("");
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of requests that shared an identical in-flight call.
+     */
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public int getRunningCallCount() {
+        return delegate.getRunningCallCount();
+    }
+
+    @Override
+    public int getQueuedCallCount() {
+        return delegate.getQueuedCallCount();
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        delegate.shutdown();
+    }
+
+    /**
+     * An upstream call shared by identical requests. Relays progress to all
+     * callers and replays the last selected command to ones that join late.
+     */
+    private static final class Flight implements AIRequest.Listener {
+        final CompletableFuture<ObjectNode> result = new CompletableFuture<>();
+        private final List<AIRequest.Listener> listeners = new ArrayList<>();
+        private String selectedCommand;
+
+        void join(AIRequest.Listener listener) {
+            String replay;
+            synchronized (this) {
+                listeners.add(listener);
+                replay = selectedCommand;
+            }
+            if (replay != null) {
+                listener.onCommandSelected(replay);
+            }
+        }
+
+        @Override
+        public void onCommandSelected(String command) {
+            List<AIRequest.Listener> current;
+            synchronized (this) {
+                selectedCommand = command;
+                current = List.copyOf(listeners);
+            }
+            for (AIRequest.Listener listener : current) {
+                listener.onCommandSelected(command);
+            }
+        }
+    }
+
+    private static final class CacheEntry {
+        final ObjectNode result;
+        final long storedAt;
+
+        CacheEntry(ObjectNode result, long storedAt) {
+            this.result = result;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.chromeagent.ai;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits extra calls (hedges, retries) to a percentage of regular calls.
+ *
+ * Every regular call earns credit; an extra call spends one call's worth.
+ * Unused credit accumulates up to a small burst.
+ */
+class CallBudget {
+    private static final long CALL_COST = 100;
+
+    private final int percent;
+    private final long maxCredits;
+    private final AtomicLong credits = new AtomicLong();
+
+    /**
+     * @param percent Extra calls allowed per 100 regular calls
+     * @param maxBurst Extra calls that may be saved up
+     */
+    CallBudget(int percent, int maxBurst) {
+        this.percent = Math.max(0, percent);
+        this.maxCredits = CALL_COST * Math.max(1, maxBurst);
+    }
+
+    /**
+     * Record a regular call.
+     */
+    void earn() {
+        credits.getAndUpdate(c -> Math.min(maxCredits, c + percent));
+    }
+
+    /**
+     * Spend credit for an extra call.
+     *
+     * @return false if the budget is used up
+     */
+    boolean tryAcquire() {
+        long current;
+        do {
+            current = credits.get();
+            if (current < CALL_COST) {
+                return false;
+            }
+        } while (!credits.compareAndSet(current, current - CALL_COST));
+        return true;
+    }
+
+    int getPercent() {
+        return percent;
+    }
+}
@@ -0,0 +1,104 @@
+package com.chromeagent.ai;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker for an upstream service.
+ *
+ * After a run of consecutive failures the circuit opens and calls fail fast.
+ * Once the open period has passed a single probe call is let through: its
+ * success closes the circuit, its failure opens it again. A probe whose
+ * answer says nothing about the service's health (e.g., rate limited) gives
+ * its slot back so the next call can probe instead.
+ */
+class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long probeStartedAt;
+    private long openCount;
+
+    CircuitBreaker(String name, int failureThreshold, long openDuration, TimeUnit unit) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * Check whether a call may be made now. In HALF_OPEN only one probe is
+     * allowed per open period.
+     */
+    synchronized boolean allowRequest() {
+        long now = System.nanoTime();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeStartedAt = now;
+                logger.info("{} circuit half-open, sending probe", name);
+                return true;
+            case HALF_OPEN:
+            default:
+                // A probe that never reported back (e.g., cancelled) is replaced
+                if (now - probeStartedAt < openNanos) {
+                    return false;
+                }
+                probeStartedAt = now;
+                return true;
+        }
+    }
+
+    synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state != State.CLOSED) {
+            logger.info("{} circuit closed", name);
+            state = State.CLOSED;
+        }
+    }
+
+    synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            logger.warn("{} circuit opened after {} consecutive failures", name, consecutiveFailures);
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            openCount++;
+        }
+    }
+
+    /**
+     * Report a call that neither succeeded nor failed. In HALF_OPEN the probe
+     * slot is freed right away instead of waiting out the probe timeout.
+     */
+    synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probeStartedAt = System.nanoTime() - openNanos;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Get the number of times the circuit has opened.
+     */
+    synchronized long getOpenCount() {
+        return openCount;
+    }
+}
@@ -1,36 +1,104 @@
 package com.chromeagent.ai;
 
 import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import okhttp3.*;
+import okio.BufferedSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Claude API service implementation.
  * Uses Tool Calling to convert natural language to structured commands.
+ *
+ * Calls run on a dedicated OkHttp dispatcher capped at aiMaxConcurrentCalls;
+ * calls beyond the cap wait in the dispatcher queue.
+ *
+ * Calls are paced by a token bucket tuned from the API's rate limit headers.
+ * 429, 5xx and network failures are retried with jittered backoff (or after
+ * retry-after) within a retry budget, and a circuit breaker fails calls fast
+ * while the API keeps failing. A 429 pauses the rate limiter but does not
+ * count against the circuit; a 429 to the half-open probe frees the probe
+ * slot for the next call.
  */
 public class ClaudeAIService implements AIService {
     private static final Logger logger = LoggerFactory.getLogger(ClaudeAIService.class);
-    private static final String API_URL = "https://api.anthropic.com/v1/messages";
     private static final String API_VERSION = "2023-06-01";
     private static final MediaType JSON = MediaType.get("application/json");
 
+    /** Flag set on error results where the model replied with text instead of a tool call. */
+    public static final String NO_TOOL_USE = "noToolUse";
+
+    private static final long BASE_RETRY_DELAY_MILLIS = 500;
+    private static final int MAX_RETRY_BURST = 10;
+    private static final String MULTI_TOOL_PROMPT = """
+
+            If the user asks for several different things at once (e.g., the cookies and the login form),
+            call one tool for each of them in the same response.
+            """;
+
+    /** Longest wait (retry-after, backoff or rate limit) before failing instead. */
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000;
+
     private final OkHttpClient client;
+    private final ExecutorService callExecutor;
     private final ObjectMapper mapper;
     private final String apiKey;
     private final String model;
-
-    public ClaudeAIService(ServerConfig config) {
+    private final String apiUrl;
+    private final boolean streaming;
+    private final boolean multiTool;
+    private final Map<String, byte[]> requestPrefixes = new ConcurrentHashMap<>();
+    private final Timer timer;
+    private final int maxRetries;
+    private final CallBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final ApiRateLimiter rateLimiter = new ApiRateLimiter();
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retried = new LongAdder();
+    private final LongAdder retryBudgetExhausted = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final AtomicBoolean cacheUsageReported = new AtomicBoolean();
+
+    public ClaudeAIService(ServerConfig config, Timer timer) {
         this.apiKey = config.getClaudeApiKey();
         this.model = config.getClaudeModel();
+        this.apiUrl = config.getClaudeApiUrl();
+        this.streaming = config.isAiStreaming();
+        this.multiTool = config.isAiMultiTool();
         this.mapper = new ObjectMapper();
+        this.timer = timer;
+        this.maxRetries = Math.max(0, config.getAiMaxRetries());
+        this.retryBudget = new CallBudget(config.getAiRetryBudgetPercent(), MAX_RETRY_BURST);
+        this.circuitBreaker = new CircuitBreaker("Claude API", config.getAiCircuitFailureThreshold(),
+                config.getAiCircuitOpenSeconds(), TimeUnit.SECONDS);
 
         // Validate API key
         if (this.apiKey == null || this.apiKey.isBlank()) {
@@ -40,77 +108,507 @@ public class ClaudeAIService implements AIService {
             );
         }
 
+        // Dedicated, bounded pool: slow API calls cannot starve shared pools
+        this.callExecutor = Executors.newCachedThreadPool(new DefaultThreadFactory("claude-api", true));
+        Dispatcher dispatcher = new Dispatcher(callExecutor);
+        dispatcher.setMaxRequests(Math.max(1, config.getAiMaxConcurrentCalls()));
+        dispatcher.setMaxRequestsPerHost(Math.max(1, config.getAiMaxConcurrentCalls()));
+
         this.client = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
                 .build();
 
-        logger.info("ClaudeAIService initialized with model: {}", model);
+        requestPrefixes.put(model, buildRequestPrefix(model));
+
+        logger.info("ClaudeAIService initialized with model: {} (max concurrent calls: {}, streaming: {})",
+                model, dispatcher.getMaxRequests(), streaming);
     }
 
     @Override
     public ObjectNode processNaturalLanguage(String prompt) {
-        logger.info("Processing natural language prompt: {}", prompt);
+        return processAsync(AIRequest.of(prompt)).join();
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+        return processAsync(AIRequest.of(prompt));
+    }
+
+    /**
+     * In streaming mode the future completes as soon as the tool call is
+     * complete, before the rest of the response has arrived. Cancelling the
+     * future cancels the HTTP call and any pending retry.
+     */
+    @Override
+    public CompletableFuture<ObjectNode> processAsync(AIRequest aiRequest) {
+        logger.info("Processing natural language prompt (async): {}", aiRequest.getPrompt());
+
+        if (!circuitBreaker.allowRequest()) {
+            rejected.increment();
+            return CompletableFuture.completedFuture(createError("Claude API unavailable, try again shortly"));
+        }
+        retryBudget.earn();
+
+        Attempt attempt = new Attempt(aiRequest,
+                aiRequest.getModel() != null ? aiRequest.getModel() : model);
+        attempt.result.whenComplete((ignored, error) -> {
+            if (error instanceof CancellationException) {
+                attempt.cancel();
+            }
+        });
+        attempt.send();
+        return attempt.result;
+    }
 
+    /**
+     * Whether a status means the API is overloaded or failing, rather than
+     * that the request was bad.
+     */
+    private static boolean isRetryable(int code) {
+        return code == 429 || code >= 500;
+    }
+
+    /**
+     * Parse a retry-after header (seconds or an HTTP date).
+     *
+     * @return Delay in milliseconds, or -1 if absent or unparseable
+     */
+    private static long retryAfterMillis(Response response) {
+        String value = response.header("retry-after");
+        if (value == null) {
+            return -1;
+        }
         try {
-            ObjectNode requestBody = buildRequestBody(prompt);
-            Request request = new Request.Builder()
-                    .url(API_URL)
-                    .addHeader("Content-Type", "application/json")
-                    .addHeader("x-api-key", apiKey)
-                    .addHeader("anthropic-version", API_VERSION)
-                    .post(RequestBody.create(mapper.writeValueAsBytes(requestBody), JSON))
-                    .build();
-
-            try (Response response = client.newCall(request).execute()) {
-                if (!response.isSuccessful()) {
-                    String errorBody = response.body() != null ? response.body().string() : "No response body";
-                    logger.error("Claude API error: {} - {}", response.code(), errorBody);
-                    return createError("API request failed: " + response.code());
-                }
+            return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            Date date = response.headers().getDate("retry-after");
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
 
-                ResponseBody body = response.body();
-                if (body == null) {
-                    return createError("Empty response from Claude API");
-                }
+    /**
+     * Exponential backoff with full jitter.
+     */
+    private static long backoffMillis(int retry) {
+        long ceiling = Math.min(MAX_RETRY_DELAY_MILLIS, BASE_RETRY_DELAY_MILLIS << retry);
+        return ThreadLocalRandom.current().nextLong(ceiling / 2, ceiling + 1);
+    }
+
+    /**
+     * One call to the API, including its retries.
+     */
+    private final class Attempt implements Callback {
+        final CompletableFuture<ObjectNode> result = new CompletableFuture<>();
+        final AIRequest aiRequest;
+        final String requestModel;
+        int retries;
+        volatile Call call;
+        volatile Timeout pending;
+
+        Attempt(AIRequest aiRequest, String requestModel) {
+            this.aiRequest = aiRequest;
+            this.requestModel = requestModel;
+        }
 
-                String responseBody = body.string();
-                logger.debug("Claude API response: {}", responseBody);
+        /**
+         * Send once the rate limiter allows it.
+         */
+        void send() {
+            long wait = rateLimiter.reserve(MAX_RETRY_DELAY_MILLIS);
+            if (wait < 0) {
+                rejected.increment();
+                result.complete(createError("Claude API rate limit reached, try again shortly"));
+            } else if (wait > 0) {
+                logger.debug("Rate limited, delaying Claude API call by {} ms", wait);
+                pending = timer.newTimeout(t -> execute(), wait, TimeUnit.MILLISECONDS);
+            } else {
+                execute();
+            }
+        }
 
-                return parseResponse(responseBody);
+        private void execute() {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                call = client.newCall(buildRequest(aiRequest, requestModel));
+            } catch (IOException e) {
+                logger.error("Error building Claude API request", e);
+                result.complete(createError("Failed to call Claude API: " + e.getMessage()));
+                return;
+            }
+            call.enqueue(this);
+        }
+
+        @Override
+        public void onResponse(Call call, Response response) {
+            try (response) {
+                rateLimiter.update(response);
+                if (isRetryable(response.code())) {
+                    long retryAfter = retryAfterMillis(response);
+                    if (response.code() == 429) {
+                        // Not an outage: the rate limiter holds calls back instead
+                        if (retryAfter > 0) {
+                            rateLimiter.pause(retryAfter);
+                        }
+                        rateLimited.increment();
+                        circuitBreaker.releaseProbe();
+                    } else {
+                        circuitBreaker.recordFailure();
+                    }
+                    if (retry(retryAfter, "HTTP " + response.code())) {
+                        return;
+                    }
+                } else if (!streaming || !response.isSuccessful()) {
+                    // A stream only counts once it has produced a result
+                    circuitBreaker.recordSuccess();
+                }
+                handleResponse(response, aiRequest, result);
+            } catch (IOException e) {
+                onFailure(call, e);
+            }
+        }
+
+        @Override
+        public void onFailure(Call call, IOException e) {
+            if (call.isCanceled()) {
+                logger.debug("Claude API call cancelled");
+                return;
+            }
+            if (result.isDone()) {
+                // e.g. draining a stream whose command was already dispatched
+                logger.debug("Claude API call failed after its result was complete: {}", e.toString());
+                return;
+            }
+            circuitBreaker.recordFailure();
+            if (retry(-1, e.toString())) {
+                return;
             }
-        } catch (IOException e) {
             logger.error("Error calling Claude API", e);
-            return createError("Failed to call Claude API: " + e.getMessage());
+            result.complete(createError("Failed to call Claude API: " + e.getMessage()));
+        }
+
+        /**
+         * Schedule a retry if the retry limit, the retry budget and the
+         * circuit allow it.
+         *
+         * @param retryAfter Delay the API asked for, or -1 to back off
+         * @return false if the failure should be reported instead
+         */
+        private boolean retry(long retryAfter, String reason) {
+            if (result.isDone() || retries >= maxRetries) {
+                return false;
+            }
+            long delay = retryAfter >= 0 ? retryAfter : backoffMillis(retries);
+            if (delay > MAX_RETRY_DELAY_MILLIS || !circuitBreaker.allowRequest()) {
+                return false;
+            }
+            if (!retryBudget.tryAcquire()) {
+                retryBudgetExhausted.increment();
+                logger.warn("Retry budget exhausted, not retrying Claude API call ({})", reason);
+                return false;
+            }
+            retries++;
+            retried.increment();
+            logger.warn("Claude API call failed ({}), retry {}/{} in {} ms", reason, retries, maxRetries, delay);
+            pending = timer.newTimeout(t -> send(), delay, TimeUnit.MILLISECONDS);
+            return true;
         }
+
+        void cancel() {
+            Timeout timeout = pending;
+            if (timeout != null) {
+                timeout.cancel();
+            }
+            Call current = call;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * Get the number of calls refused without reaching the API (circuit
+     * open or rate limit wait too long).
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    public long getRetryCount() {
+        return retried.sum();
+    }
+
+    public long getRetryBudgetExhaustedCount() {
+        return retryBudgetExhausted.sum();
+    }
+
+    /**
+     * Get the number of 429 responses.
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * Get the circuit state: 0 closed, 1 open, 2 half-open.
+     */
+    public int getCircuitState() {
+        return circuitBreaker.getState().ordinal();
     }
 
-    private ObjectNode buildRequestBody(String prompt) {
+    public long getCircuitOpenCount() {
+        return circuitBreaker.getOpenCount();
+    }
+
+    @Override
+    public int getRunningCallCount() {
+        return client.dispatcher().runningCallsCount();
+    }
+
+    @Override
+    public int getQueuedCallCount() {
+        return client.dispatcher().queuedCallsCount();
+    }
+
+    @Override
+    public void shutdown() {
+        client.dispatcher().cancelAll();
+        callExecutor.shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private Request buildRequest(AIRequest aiRequest, String model) throws IOException {
+        return new Request.Builder()
+                .url(apiUrl)
+                .addHeader("Content-Type", "application/json")
+                .addHeader("x-api-key", apiKey)
+                .addHeader("anthropic-version", API_VERSION)
+                .post(RequestBody.create(buildRequestBody(aiRequest, model), JSON))
+                .build();
+    }
+
+    /**
+     * Complete the result from an API response. Has no effect if the result
+     * is already complete.
+     */
+    private void handleResponse(Response response, AIRequest aiRequest,
+                                CompletableFuture<ObjectNode> result) throws IOException {
+        if (!response.isSuccessful()) {
+            String errorBody = response.body() != null ? response.body().string() : "No response body";
+            logger.error("Claude API error: {} - {}", response.code(), errorBody);
+            result.complete(createError("API request failed: " + response.code()));
+            return;
+        }
+
+        ResponseBody body = response.body();
+        if (body == null) {
+            result.complete(createError("Empty response from Claude API"));
+            return;
+        }
+
+        if (streaming) {
+            readEventStream(body.source(), aiRequest, result);
+            return;
+        }
+
+        String responseBody = body.string();
+        logger.debug("Claude API response: {}", responseBody);
+
+        result.complete(parseResponse(responseBody));
+    }
+
+    /**
+     * Consume a Messages API event stream. Tool inputs are assembled from
+     * input_json_delta events. With a single command the result is completed
+     * when its tool_use block stops; in multi-tool mode as soon as an event
+     * other than another tool_use block follows the last one, which is the
+     * earliest point the list is known to be complete. The remaining events
+     * are drained so the connection can be reused.
+     *
+     * @throws IOException if the stream fails before the result is complete
+     *         (an error event, a read error or a premature end), so the call
+     *         is retried and counted as a circuit failure
+     */
+    private void readEventStream(BufferedSource source, AIRequest aiRequest,
+                                 CompletableFuture<ObjectNode> result) throws IOException {
+        Map<Integer, String> toolNames = new HashMap<>();
+        Map<Integer, StringBuilder> toolInputs = new HashMap<>();
+        List<ObjectNode> commands = new ArrayList<>();
+        StringBuilder text = new StringBuilder();
+
+        String line;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith("data:")) {
+                continue; // event names, comments and blank separators
+            }
+            JsonNode event = mapper.readTree(line.substring(5).trim());
+            String type = event.path("type").asText();
+            int index = event.path("index").asInt();
+
+            boolean toolStart = "content_block_start".equals(type)
+                    && "tool_use".equals(event.path("content_block").path("type").asText());
+            if (multiTool && !commands.isEmpty() && !toolStart && !"ping".equals(type)
+                    && commands.size() == toolNames.size()) {
+                completeStream(result, createResult(commands));
+            }
+
+            switch (type) {
+                case "content_block_start" -> {
+                    if (toolStart) {
+                        String toolName = event.path("content_block").path("name").asText();
+                        if (toolNames.isEmpty()) {
+                            aiRequest.getListener().onCommandSelected(ToolDefinitions.toolToCommand(toolName));
+                        }
+                        toolNames.put(index, toolName);
+                        toolInputs.put(index, new StringBuilder());
+                    }
+                }
+                case "content_block_delta" -> {
+                    JsonNode delta = event.path("delta");
+                    String deltaType = delta.path("type").asText();
+                    StringBuilder toolInput = toolInputs.get(index);
+                    if ("input_json_delta".equals(deltaType) && toolInput != null) {
+                        toolInput.append(delta.path("partial_json").asText());
+                    } else if ("text_delta".equals(deltaType)) {
+                        text.append(delta.path("text").asText());
+                    }
+                }
+                case "content_block_stop" -> {
+                    String toolName = toolNames.get(index);
+                    if (toolName != null && !result.isDone()) {
+                        StringBuilder toolInput = toolInputs.get(index);
+                        commands.add(createCommand(toolName,
+                                toolInput.length() > 0 ? mapper.readTree(toolInput.toString()) : null));
+                        if (!multiTool) {
+                            completeStream(result, commands.get(0));
+                        }
+                    }
+                }
+                case "message_start" -> logUsage(event.path("message").path("usage"));
+                case "message_delta" ->
+                        logger.debug("Claude API usage: output={}", event.path("usage").path("output_tokens").asInt());
+                case "error" -> {
+                    String message = event.path("error").path("message").asText("unknown error");
+                    if (result.isDone()) {
+                        logger.warn("Claude API stream error after the result was complete: {}", message);
+                        return;
+                    }
+                    throw new IOException("Claude API stream error: " + message);
+                }
+                case "message_stop" -> {
+                    completeStream(result, !commands.isEmpty() ? createResult(commands)
+                            : text.length() > 0
+                            ? createNoToolUse("Unable to convert to command: " + text)
+                            : createNoToolUse("No tool use in Claude response"));
+                    return;
+                }
+                default -> {
+                    // ping
+                }
+            }
+        }
+
+        if (!result.isDone()) {
+            throw new IOException("Claude API stream ended unexpectedly");
+        }
+    }
+
+    /**
+     * Complete the result from the event stream. The call has succeeded as
+     * far as the circuit is concerned once it produced a result.
+     */
+    private void completeStream(CompletableFuture<ObjectNode> result, ObjectNode value) {
+        if (result.complete(value)) {
+            circuitBreaker.recordSuccess();
+        }
+    }
+
+    /**
+     * Serialize the parts of the request body that never change (model,
+     * system prompt, tools, tool_choice) once per model. The result is the
+     * JSON object without its closing brace, ready for the per-request messages.
+     *
+     * The system prompt and the last tool carry cache_control markers so the
+     * API serves the whole static prefix from its prompt cache. The prefix
+     * may be shorter than the model's minimum cacheable length, in which case
+     * nothing is cached; logUsage reports which on the first response.
+     */
+    private byte[] buildRequestPrefix(String model) {
         ObjectNode root = mapper.createObjectNode();
         root.put("model", model);
         root.put("max_tokens", 1024);
+        if (streaming) {
+            root.put("stream", true);
+        }
 
         // System prompt
-        root.put("system", buildSystemPrompt());
-
-        // Messages
-        ArrayNode messages = mapper.createArrayNode();
-        ObjectNode userMessage = mapper.createObjectNode();
-        userMessage.put("role", "user");
-        userMessage.put("content", prompt);
-        messages.add(userMessage);
-        root.set("messages", messages);
-
-        // Tools
-        root.set("tools", ToolDefinitions.getTools());
+        ArrayNode system = mapper.createArrayNode();
+        ObjectNode systemBlock = system.addObject();
+        systemBlock.put("type", "text");
+        systemBlock.put("text", multiTool ? buildSystemPrompt() + MULTI_TOOL_PROMPT : buildSystemPrompt());
+        systemBlock.set("cache_control", ephemeralCacheControl());
+        root.set("system", system);
+
+        // Tools (copied: the shared definitions must not carry our marker)
+        ArrayNode tools = ToolDefinitions.getTools().deepCopy();
+        if (!tools.isEmpty()) {
+            ((ObjectNode) tools.get(tools.size() - 1)).set("cache_control", ephemeralCacheControl());
+        }
+        root.set("tools", tools);
 
         // Force tool use
         ObjectNode toolChoice = mapper.createObjectNode();
         toolChoice.put("type", "any");
+        if (!multiTool) {
+            toolChoice.put("disable_parallel_tool_use", true);
+        }
         root.set("tool_choice", toolChoice);
 
-        return root;
+        try {
+            byte[] json = mapper.writeValueAsBytes(root);
+            return Arrays.copyOf(json, json.length - 1);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to serialize Claude request prefix", e);
+        }
+    }
+
+    private ObjectNode ephemeralCacheControl() {
+        ObjectNode cacheControl = mapper.createObjectNode();
+        cacheControl.put("type", "ephemeral");
+        return cacheControl;
+    }
+
+    /**
+     * Build the request body: the pre-serialized prefix followed by the
+     * conversation history, the user message and the closing brace.
+     */
+    private byte[] buildRequestBody(AIRequest aiRequest, String model) throws IOException {
+        byte[] requestPrefix = requestPrefixes.computeIfAbsent(model, this::buildRequestPrefix);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(requestPrefix.length + aiRequest.getPrompt().length() + 64);
+        out.write(requestPrefix);
+        try (JsonGenerator gen = mapper.getFactory().createGenerator((OutputStream) out)) {
+            gen.writeRaw(",\"messages\":");
+            gen.writeStartArray();
+            for (AIRequest.Exchange exchange : aiRequest.getHistory()) {
+                writeMessage(gen, "user", exchange.getPrompt());
+                writeMessage(gen, "assistant", exchange.getReply());
+            }
+            writeMessage(gen, "user", aiRequest.getPrompt());
+            gen.writeEndArray();
+            gen.writeRaw("}");
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeMessage(JsonGenerator gen, String role, String content) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("role", role);
+        gen.writeStringField("content", content);
+        gen.writeEndObject();
     }
 
     private String buildSystemPrompt() {
@@ -139,45 +637,59 @@ public class ClaudeAIService implements AIService {
             """;
     }
 
+    /**
+     * Log token usage, and say once whether the request prefix is being
+     * cached at all: below the model's minimum cacheable length (1024 or
+     * 2048 tokens) the API ignores cache_control without an error.
+     */
+    private void logUsage(JsonNode usage) {
+        int cacheRead = usage.path("cache_read_input_tokens").asInt();
+        int cacheWrite = usage.path("cache_creation_input_tokens").asInt();
+        logger.debug("Claude API usage: input={}, cache_read={}, cache_write={}, output={}",
+                usage.path("input_tokens").asInt(), cacheRead, cacheWrite, usage.path("output_tokens").asInt());
+
+        if (usage.has("input_tokens") && cacheUsageReported.compareAndSet(false, true)) {
+            if (cacheRead == 0 && cacheWrite == 0) {
+                logger.warn("Claude API prompt cache unused (input: {} tokens): the request prefix is likely "
+                        + "below the model's minimum cacheable length", usage.path("input_tokens").asInt());
+            } else {
+                logger.info("Claude API prompt cache active (cache_read: {}, cache_write: {})", cacheRead, cacheWrite);
+            }
+        }
+    }
+
     private ObjectNode parseResponse(String responseBody) {
         try {
             JsonNode response = mapper.readTree(responseBody);
             JsonNode content = response.get("content");
 
+            logUsage(response.path("usage"));
+
             if (content == null || !content.isArray() || content.isEmpty()) {
                 return createError("Invalid response format from Claude API");
             }
 
-            // Find tool_use block
+            // Collect tool_use blocks (only the first unless in multi-tool mode)
+            List<ObjectNode> commands = new ArrayList<>();
             for (JsonNode block : content) {
                 if ("tool_use".equals(block.path("type").asText())) {
-                    String toolName = block.path("name").asText();
-                    JsonNode input = block.get("input");
-
-                    ObjectNode result = mapper.createObjectNode();
-                    result.put("command", ToolDefinitions.toolToCommand(toolName));
-                    if (input != null) {
-                        result.set("params", input);
-                    } else {
-                        result.set("params", mapper.createObjectNode());
-                    }
-
-                    logger.info("Parsed command: {} with params: {}",
-                            result.get("command"), result.get("params"));
-                    return result;
+                    commands.add(createCommand(block.path("name").asText(), block.get("input")));
                 }
             }
+            if (!commands.isEmpty()) {
+                return createResult(commands);
+            }
 
             // No tool_use found - check for text response
             for (JsonNode block : content) {
                 if ("text".equals(block.path("type").asText())) {
                     String text = block.path("text").asText();
                     logger.warn("Claude returned text instead of tool use: {}", text);
-                    return createError("Unable to convert to command: " + text);
+                    return createNoToolUse("Unable to convert to command: " + text);
                 }
             }
 
-            return createError("No tool use in Claude response");
+            return createNoToolUse("No tool use in Claude response");
 
         } catch (Exception e) {
             logger.error("Error parsing Claude response", e);
@@ -185,6 +697,45 @@ public class ClaudeAIService implements AIService {
         }
     }
 
+    private ObjectNode createCommand(String toolName, JsonNode input) {
+        ObjectNode result = mapper.createObjectNode();
+        result.put("command", ToolDefinitions.toolToCommand(toolName));
+        if (input != null) {
+            result.set("params", input);
+        } else {
+            result.set("params", mapper.createObjectNode());
+        }
+
+        logger.info("Parsed command: {} with params: {}",
+                result.get("command"), result.get("params"));
+        return result;
+    }
+
+    /**
+     * A single command, or in multi-tool mode with several tool calls the
+     * first command plus a "commands" array of all of them.
+     */
+    private ObjectNode createResult(List<ObjectNode> commands) {
+        if (!multiTool || commands.size() == 1) {
+            return commands.get(0);
+        }
+        ObjectNode result = commands.get(0).deepCopy();
+        ArrayNode all = result.putArray("commands");
+        commands.forEach(all::add);
+        logger.info("Parsed {} commands for parallel execution", commands.size());
+        return result;
+    }
+
+    /**
+     * An error for a model that answered without calling a tool, as opposed
+     * to a failed call.
+     */
+    private ObjectNode createNoToolUse(String message) {
+        ObjectNode error = createError(message);
+        error.put(NO_TOOL_USE, true);
+        return error;
+    }
+
     private ObjectNode createError(String message) {
         ObjectNode error = mapper.createObjectNode();
         error.put("error", message);
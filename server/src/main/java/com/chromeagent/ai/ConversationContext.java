@@ -0,0 +1,300 @@
+package com.chromeagent.ai;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Conversation memory of one agent session: earlier prompts, the commands
+ * they became and a short summary of each command's result.
+ *
+ * Recent turns are kept in full. When there are more than maxTurns, or the
+ * history exceeds its token budget, the oldest turns are reduced to one
+ * summary line each, and the oldest summary lines are dropped after that.
+ * Token counts are estimated at four characters per token.
+ */
+public class ConversationContext {
+    private static final int CHARS_PER_TOKEN = 4;
+    private static final int MAX_PROMPT_CHARS = 1000;
+    private static final int MAX_RESULT_CHARS = 300;
+    private static final int MAX_SUMMARY_LINES = 20;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    /** Bytes of a raw RESPONSE payload enough for recordRawResult. */
+    public static final int RESULT_PREFIX_BYTES = 4096;
+
+    private final int tokenBudget;
+    private final int maxTurns;
+    private final ArrayDeque<Turn> turns = new ArrayDeque<>();
+    private final ArrayDeque<String> summaryLines = new ArrayDeque<>();
+
+    public ConversationContext(int tokenBudget, int maxTurns) {
+        this.tokenBudget = tokenBudget;
+        this.maxTurns = Math.max(1, maxTurns);
+    }
+
+    /**
+     * Get the history to send with the next prompt, oldest first.
+     */
+    public synchronized List<AIRequest.Exchange> getHistory() {
+        List<AIRequest.Exchange> history = new ArrayList<>(turns.size() + 1);
+        if (!summaryLines.isEmpty()) {
+            history.add(new AIRequest.Exchange(
+                    "Summary of earlier requests in this conversation:\n" + String.join("\n", summaryLines),
+                    "Noted."));
+        }
+        for (Turn turn : turns) {
+            history.add(new AIRequest.Exchange(turn.prompt, turn.reply()));
+        }
+        return history;
+    }
+
+    /**
+     * Record a prompt and the command(s) it was turned into.
+     *
+     * @param requestId Request ID the command(s) were sent under
+     * @param prompt The user's prompt
+     * @param aiResult The AI result ({command, params[, commands]})
+     */
+    public synchronized void addTurn(String requestId, String prompt, JsonNode aiResult) {
+        JsonNode commands = aiResult.path("commands");
+        List<JsonNode> called = new ArrayList<>();
+        if (commands.isArray() && !commands.isEmpty()) {
+            commands.forEach(called::add);
+        } else {
+            called.add(aiResult);
+        }
+
+        StringBuilder calls = new StringBuilder();
+        List<String> names = new ArrayList<>(called.size());
+        for (JsonNode command : called) {
+            String name = command.path("command").asText("UNKNOWN");
+            names.add(name);
+            if (calls.length() > 0) {
+                calls.append("; ");
+            }
+            calls.append(name);
+            JsonNode params = command.path("params");
+            if (params.isObject() && !params.isEmpty()) {
+                calls.append(' ').append(params);
+            }
+        }
+
+        turns.addLast(new Turn(requestId, truncate(prompt, MAX_PROMPT_CHARS), calls.toString(),
+                String.join(", ", names)));
+        compact();
+    }
+
+    /**
+     * Check if a turn sent under the given request ID is still kept in full,
+     * i.e. whether a result for it would be recorded.
+     */
+    public synchronized boolean hasTurn(String requestId) {
+        return findTurn(requestId) != null;
+    }
+
+    /**
+     * Attach a summary of the extension's RESPONSE to the turn that sent
+     * the command. Ignored if the turn is no longer kept in full.
+     */
+    public synchronized void recordResult(String requestId, JsonNode payload) {
+        Turn turn = findTurn(requestId);
+        if (turn != null) {
+            turn.result = summarizeResult(payload);
+            compact();
+        }
+    }
+
+    /**
+     * Like recordResult, from the first bytes of a RESPONSE payload that
+     * has not been parsed (see RESULT_PREFIX_BYTES).
+     */
+    public synchronized void recordRawResult(String requestId, byte[] payloadPrefix) {
+        Turn turn = findTurn(requestId);
+        if (turn != null) {
+            turn.result = summarizeRawResult(payloadPrefix);
+            compact();
+        }
+    }
+
+    private Turn findTurn(String requestId) {
+        for (Iterator<Turn> it = turns.descendingIterator(); it.hasNext(); ) {
+            Turn turn = it.next();
+            if (turn.requestId != null && turn.requestId.equals(requestId)) {
+                return turn;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the estimated token count of the history.
+     */
+    public synchronized int getEstimatedTokens() {
+        int chars = 0;
+        for (String line : summaryLines) {
+            chars += line.length() + 1;
+        }
+        for (Turn turn : turns) {
+            chars += turn.prompt.length() + turn.reply().length();
+        }
+        return chars / CHARS_PER_TOKEN;
+    }
+
+    private void compact() {
+        while (turns.size() > maxTurns || (getEstimatedTokens() > tokenBudget && !turns.isEmpty())) {
+            summaryLines.addLast(turns.pollFirst().summaryLine());
+        }
+        while (summaryLines.size() > MAX_SUMMARY_LINES
+                || (getEstimatedTokens() > tokenBudget && !summaryLines.isEmpty())) {
+            summaryLines.pollFirst();
+        }
+    }
+
+    /**
+     * Reduce a RESPONSE payload to its outcome and the start of its data.
+     */
+    static String summarizeResult(JsonNode payload) {
+        if (payload == null) {
+            return "no result";
+        }
+        if (!payload.path("success").asBoolean(false)) {
+            return "failed: " + truncate(errorMessage(payload.path("error")), MAX_RESULT_CHARS);
+        }
+        JsonNode data = payload.has("data") ? payload.get("data") : payload.get("results");
+        return data == null ? "ok" : "ok: " + truncate(writePrefix(data), MAX_RESULT_CHARS);
+    }
+
+    /**
+     * Reduce the first bytes of a raw RESPONSE payload to its outcome and
+     * the start of its data. Fields past the prefix are not seen; a payload
+     * without a success flag in the prefix counts as ok unless it has an error.
+     */
+    static String summarizeRawResult(byte[] prefix) {
+        Boolean success = null;
+        String error = null;
+        String data = null;
+        try (JsonParser parser = MAPPER.getFactory().createParser(prefix)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return "no result";
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "success" -> success = value == JsonToken.VALUE_TRUE;
+                    case "error" -> {
+                        if (value != JsonToken.VALUE_NULL) {
+                            error = errorMessage(MAPPER.readTree(parser));
+                        }
+                    }
+                    case "data", "results" -> {
+                        if (data != null) {
+                            parser.skipChildren();
+                            break;
+                        }
+                        // Up to the end of the prefix, then of the value once it is found there
+                        int start = (int) parser.currentTokenLocation().getByteOffset();
+                        data = slice(prefix, start, prefix.length);
+                        if (value.isStructStart()) {
+                            parser.skipChildren();
+                        } else {
+                            parser.finishToken();
+                        }
+                        data = slice(prefix, start, (int) parser.currentLocation().getByteOffset());
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+        } catch (IOException e) {
+            // The prefix ends mid-payload: summarize what was read
+        }
+
+        if (Boolean.FALSE.equals(success) || (success == null && error != null)) {
+            return "failed: " + truncate(error != null ? error : "unknown error", MAX_RESULT_CHARS);
+        }
+        if (success == null && data == null) {
+            return "no result";
+        }
+        return data == null ? "ok" : "ok: " + truncate(data, MAX_RESULT_CHARS);
+    }
+
+    private static String slice(byte[] bytes, int start, int end) {
+        return new String(bytes, start, Math.min(end - start, MAX_RESULT_CHARS + 1), StandardCharsets.UTF_8);
+    }
+
+    private static String errorMessage(JsonNode error) {
+        return error.isObject()
+                ? error.path("message").asText(error.path("code").asText("unknown error"))
+                : error.asText("unknown error");
+    }
+
+    /**
+     * Serialize a node, stopping once MAX_RESULT_CHARS have been written
+     * rather than rendering a large result in full.
+     */
+    private static String writePrefix(JsonNode node) {
+        StringBuilder out = new StringBuilder();
+        Writer writer = new Writer() {
+            @Override
+            public void write(char[] chars, int offset, int length) throws IOException {
+                int room = MAX_RESULT_CHARS + 1 - out.length();
+                out.append(chars, offset, Math.min(room, length));
+                if (length >= room) {
+                    throw new IOException("result prefix complete");
+                }
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try {
+            MAPPER.writeValue(writer, node);
+        } catch (IOException e) {
+            // Stopped at the limit
+        }
+        return out.toString();
+    }
+
+    private static String truncate(String text, int maxChars) {
+        return text.length() <= maxChars ? text : text.substring(0, maxChars) + "...";
+    }
+
+    private static final class Turn {
+        final String requestId;
+        final String prompt;
+        final String calls;
+        final String names;
+        String result;
+
+        Turn(String requestId, String prompt, String calls, String names) {
+            this.requestId = requestId;
+            this.prompt = prompt;
+            this.calls = calls;
+            this.names = names;
+        }
+
+        String reply() {
+            return "Called " + calls + (result != null ? ". Result: " + result : ".");
+        }
+
+        String summaryLine() {
+            return "- \"" + truncate(prompt, 100) + "\" -> " + names
+                    + (result == null ? "" : result.startsWith("failed") ? " (failed)" : " (ok)");
+        }
+    }
+}
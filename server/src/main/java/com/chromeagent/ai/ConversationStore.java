@@ -0,0 +1,50 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Conversation contexts of agent sessions, by session ID.
+ * A context is created on a session's first CHAT and must be removed when
+ * the session is removed.
+ */
+public class ConversationStore {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationStore.class);
+
+    private final ConcurrentHashMap<String, ConversationContext> contexts = new ConcurrentHashMap<>();
+    private final int tokenBudget;
+    private final int maxTurns;
+
+    public ConversationStore(ServerConfig config) {
+        this.tokenBudget = config.getAiContextTokenBudget();
+        this.maxTurns = config.getAiContextMaxTurns();
+        logger.info("Conversation context enabled (token budget: {}, max turns: {})", tokenBudget, maxTurns);
+    }
+
+    /**
+     * Get a session's context, creating it if needed.
+     */
+    public ConversationContext get(String sessionId) {
+        return contexts.computeIfAbsent(sessionId, id -> new ConversationContext(tokenBudget, maxTurns));
+    }
+
+    /**
+     * Get a session's context only if it already has one.
+     */
+    public ConversationContext find(String sessionId) {
+        return contexts.get(sessionId);
+    }
+
+    public void remove(String sessionId) {
+        if (contexts.remove(sessionId) != null) {
+            logger.debug("Conversation context freed for session: {}", sessionId);
+        }
+    }
+
+    public int size() {
+        return contexts.size();
+    }
+}
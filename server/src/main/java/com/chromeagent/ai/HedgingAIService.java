@@ -0,0 +1,224 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedges slow calls to another AIService.
+ *
+ * When a call has not answered within the configured percentile of recent
+ * latency for its model, an identical call is sent (optionally to a
+ * fallback model). The first successful result wins and the other call is
+ * cancelled. Hedges are limited to a percentage of calls by a {@link CallBudget}.
+ *
+ * The delegate's futures must cancel the underlying call when cancelled.
+ */
+public class HedgingAIService implements AIService {
+    private static final Logger logger = LoggerFactory.getLogger(HedgingAIService.class);
+
+    /** Latency samples kept per model. */
+    private static final int WINDOW_SIZE = 256;
+    /** Samples needed before a model's calls are hedged. */
+    private static final int MIN_SAMPLES = 20;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 50;
+    private static final int MAX_HEDGE_BURST = 10;
+
+    private final AIService delegate;
+    private final Timer timer;
+    private final int percentile;
+    private final CallBudget budget;
+    private final String hedgeModel;
+    private final ConcurrentHashMap<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    public HedgingAIService(AIService delegate, ServerConfig config, Timer timer) {
+        this.delegate = delegate;
+        this.timer = timer;
+        this.percentile = Math.min(99, config.getAiHedgePercentile());
+        this.budget = new CallBudget(config.getAiHedgeBudgetPercent(), MAX_HEDGE_BURST);
+        this.hedgeModel = config.getAiHedgeModel();
+
+        logger.info("AI request hedging enabled (p{}, budget: {}%, hedge model: {})",
+                percentile, budget.getPercent(), hedgeModel.isBlank() ? "same" : hedgeModel);
+    }
+
+    @Override
+    public ObjectNode processNaturalLanguage(String prompt) {
+        return processAsync(AIRequest.of(prompt)).join();
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+        return processAsync(AIRequest.of(prompt));
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+        budget.earn();
+
+        // Both calls report to the request's listener, which passes progress on once
+        LatencyWindow window = latencies.computeIfAbsent(modelKey(request), k -> new LatencyWindow());
+        HedgedCall call = new HedgedCall(window);
+        call.add(delegate.processAsync(request), false);
+
+        long delay = window.percentileMillis(percentile);
+        if (delay >= 0) {
+            Timeout timeout = timer.newTimeout(t -> hedge(call, request, delay),
+                    Math.max(MIN_HEDGE_DELAY_MILLIS, delay), TimeUnit.MILLISECONDS);
+            call.result.whenComplete((result, error) -> timeout.cancel());
+        }
+        return call.result;
+    }
+
+    private void hedge(HedgedCall call, AIRequest request, long delay) {
+        if (call.result.isDone()) {
+            return;
+        }
+        if (!budget.tryAcquire()) {
+            budgetExhausted.increment();
+            return;
+        }
+        hedged.increment();
+        logger.debug("Hedging AI call after {} ms for prompt: {}", delay, request.getPrompt());
+        call.add(delegate.processAsync(hedgeModel.isBlank() ? request : request.withModel(hedgeModel)), true);
+    }
+
+    private static String modelKey(AIRequest request) {
+        return request.getModel() != null ? request.getModel() : "";
+    }
+
+    /**
+     * Get the number of calls that were hedged.
+     */
+    public long getHedgeCount() {
+        return hedged.sum();
+    }
+
+    /**
+     * Get the number of hedged calls answered by the hedge.
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    /**
+     * Get the number of hedges skipped because the budget was used up.
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.sum();
+    }
+
+    @Override
+    public int getRunningCallCount() {
+        return delegate.getRunningCallCount();
+    }
+
+    @Override
+    public int getQueuedCallCount() {
+        return delegate.getQueuedCallCount();
+    }
+
+    @Override
+    public void shutdown() {
+        logger.info("AI request hedging: {} hedged ({} won), {} skipped for budget",
+                getHedgeCount(), getHedgeWinCount(), getBudgetExhaustedCount());
+        delegate.shutdown();
+    }
+
+    /**
+     * The primary call and, once sent, its hedge. The first successful
+     * result completes the call and cancels the other; an error result only
+     * completes it when no other call is still running.
+     */
+    private final class HedgedCall {
+        final CompletableFuture<ObjectNode> result = new CompletableFuture<>();
+        final LatencyWindow window;
+        final long startNanos = System.nanoTime();
+        final AtomicInteger outstanding = new AtomicInteger();
+        volatile CompletableFuture<ObjectNode> primary;
+        volatile CompletableFuture<ObjectNode> hedge;
+
+        HedgedCall(LatencyWindow window) {
+            this.window = window;
+        }
+
+        void add(CompletableFuture<ObjectNode> attempt, boolean isHedge) {
+            outstanding.incrementAndGet();
+            if (isHedge) {
+                hedge = attempt;
+            } else {
+                primary = attempt;
+            }
+            attempt.whenComplete((value, error) -> complete(value, error, isHedge));
+            if (isHedge && result.isDone()) {
+                attempt.cancel(true); // the primary answered while the hedge was being sent
+            }
+        }
+
+        private void complete(ObjectNode value, Throwable error, boolean isHedge) {
+            boolean last = outstanding.decrementAndGet() == 0;
+            boolean success = error == null && value != null && !value.has("error");
+            if (!success && !last) {
+                return; // the other call may still succeed
+            }
+
+            boolean won = error != null ? result.completeExceptionally(error) : result.complete(value);
+            if (!won) {
+                return;
+            }
+            window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (isHedge) {
+                hedgeWins.increment();
+            }
+
+            CompletableFuture<ObjectNode> other = isHedge ? primary : hedge;
+            if (other != null) {
+                other.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Ring buffer of a model's recent call latencies.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[WINDOW_SIZE];
+        private int count;
+        private int next;
+
+        synchronized void record(long millis) {
+            samples[next] = millis;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * @return Latency at the given percentile, or -1 if too few samples
+         */
+        long percentileMillis(int percentile) {
+            long[] sorted;
+            synchronized (this) {
+                if (count < MIN_SAMPLES) {
+                    return -1;
+                }
+                sorted = Arrays.copyOf(samples, count);
+            }
+            Arrays.sort(sorted);
+            return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)];
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.chromeagent.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Resolves trivial prompts locally in front of another AIService.
+ *
+ * Only prompts that match a rule in full are answered here, and only for
+ * commands that need no parameters; anything else (a selector, a cookie
+ * name, a form) falls through to the delegate.
+ *
+ * Requests that bypass the cache also bypass the rules. When a rule would
+ * have matched such a request, the delegate's answer is compared with the
+ * rule's and a disagreement is logged as an override.
+ */
+public class IntentMatchingAIService implements AIService {
+    private static final Logger logger = LoggerFactory.getLogger(IntentMatchingAIService.class);
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final String POLITE = "(?:(?:please|can you|could you|would you) )*";
+    private static final String VERB = "(?:get|show|give|tell|list|extract|fetch|read|display|what(?:'s| is| are))(?: me)? ";
+
+    private static final List<Rule> RULES = List.of(
+            new Rule("get_page_info", Pattern.compile(
+                    "^" + POLITE + "(?:" + VERB + ")?(?:the )?(?:current |this )?(?:page )?"
+                            + "(?:url|title|info|information|address|domain|url and title|title and url)"
+                            + "(?: of (?:the|this) page)?(?: please)?$")),
+            new Rule("extract_cookies", Pattern.compile(
+                    "^" + POLITE + "(?:" + VERB + ")?(?:all )?(?:the )?(?:of the )?cookies"
+                            + "(?: (?:on|from|for|of) (?:the |this )?(?:current )?(?:page|site|website))?(?: please)?$"))
+    );
+
+    private final AIService delegate;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder overrides = new LongAdder();
+
+    public IntentMatchingAIService(AIService delegate) {
+        this.delegate = delegate;
+        logger.info("AI intent fast path enabled ({} rules)", RULES.size());
+    }
+
+    @Override
+    public ObjectNode processNaturalLanguage(String prompt) {
+        return processAsync(AIRequest.of(prompt)).join();
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+        return processAsync(AIRequest.of(prompt));
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+        String toolName = match(request.getPrompt());
+
+        if (toolName == null) {
+            misses.increment();
+            return delegate.processAsync(request);
+        }
+
+        if (request.isBypassCache()) {
+            // Let the model decide, and record whether it agrees with the rule
+            return delegate.processAsync(request).thenApply(result -> {
+                verify(request, toolName, result);
+                return result;
+            });
+        }
+
+        hits.increment();
+        ObjectNode result = mapper.createObjectNode();
+        result.put("command", ToolDefinitions.toolToCommand(toolName));
+        result.set("params", mapper.createObjectNode());
+
+        logger.debug("AI intent fast path resolved prompt '{}' to {}", request.getPrompt(), result.get("command"));
+        return CompletableFuture.completedFuture(result);
+    }
+
+    /**
+     * Find the tool whose rule matches the whole prompt.
+     *
+     * @return Tool name, or null if no rule matches
+     */
+    static String match(String prompt) {
+        String normalized = CachingAIService.normalizePrompt(prompt);
+        for (Rule rule : RULES) {
+            if (rule.pattern.matcher(normalized).matches()) {
+                return rule.toolName;
+            }
+        }
+        return null;
+    }
+
+    private void verify(AIRequest request, String toolName, ObjectNode result) {
+        if (result == null || result.has("error")) {
+            return;
+        }
+        String expected = ToolDefinitions.toolToCommand(toolName);
+        String actual = result.path("command").asText();
+        if (!expected.equals(actual)) {
+            overrides.increment();
+            logger.warn("AI intent fast path overridden: prompt '{}' matched {} but model chose {}",
+                    request.getPrompt(), expected, actual);
+        }
+    }
+
+    /**
+     * Get the number of requests answered by a rule.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of verified requests where the model disagreed with the rule.
+     */
+    public long getOverrideCount() {
+        return overrides.sum();
+    }
+
+    @Override
+    public int getRunningCallCount() {
+        return delegate.getRunningCallCount();
+    }
+
+    @Override
+    public int getQueuedCallCount() {
+        return delegate.getQueuedCallCount();
+    }
+
+    @Override
+    public void shutdown() {
+        logger.info("AI intent fast path: {} hits, {} misses, {} overrides",
+                getHitCount(), getMissCount(), getOverrideCount());
+        delegate.shutdown();
+    }
+
+    private static final class Rule {
+        final String toolName;
+        final Pattern pattern;
+
+        Rule(String toolName, Pattern pattern) {
+            this.toolName = toolName;
+            this.pattern = pattern;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Routes requests between a fast model and the configured model.
+ *
+ * Short prompts without any of the configured escalation keywords go to the
+ * fast model first. If it answers with text instead of a tool call, or with
+ * a command missing its required parameters, the request is retried on the
+ * configured model. Everything else goes straight to the configured model.
+ *
+ * The delegate must honour {@link AIRequest#getModel()}.
+ */
+public class ModelRoutingAIService implements AIService {
+    private static final Logger logger = LoggerFactory.getLogger(ModelRoutingAIService.class);
+
+    private final AIService delegate;
+    private final String fastModel;
+    private final int maxFastPromptChars;
+    private final List<String> largeModelKeywords;
+
+    private final TierStats fast = new TierStats();
+    private final TierStats large = new TierStats();
+    private final LongAdder escalations = new LongAdder();
+
+    public ModelRoutingAIService(AIService delegate, ServerConfig config) {
+        this.delegate = delegate;
+        this.fastModel = config.getAiFastModel();
+        this.maxFastPromptChars = config.getAiFastMaxPromptChars();
+        this.largeModelKeywords = Arrays.stream(config.getAiLargeModelKeywords().split(","))
+                .map(keyword -> keyword.trim().toLowerCase(Locale.ROOT))
+                .filter(keyword -> !keyword.isEmpty())
+                .toList();
+
+        logger.info("AI model routing enabled (fast model: {}, max prompt chars: {}, large model keywords: {})",
+                fastModel, maxFastPromptChars, largeModelKeywords);
+    }
+
+    @Override
+    public ObjectNode processNaturalLanguage(String prompt) {
+        return processAsync(AIRequest.of(prompt)).join();
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+        return processAsync(AIRequest.of(prompt));
+    }
+
+    @Override
+    public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+        if (!isSimple(request.getPrompt())) {
+            return callLarge(request);
+        }
+
+        return timed(fast, delegate.processAsync(request.withModel(fastModel)))
+                .thenCompose(result -> {
+                    if (!needsEscalation(result)) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    escalations.increment();
+                    logger.info("Escalating prompt '{}' from {}: {}", request.getPrompt(), fastModel,
+                            result.has("error") ? result.get("error").asText() : "incomplete command " + result.get("command"));
+                    return callLarge(request);
+                });
+    }
+
+    private CompletableFuture<ObjectNode> callLarge(AIRequest request) {
+        return timed(large, delegate.processAsync(request));
+    }
+
+    /**
+     * Whether a prompt is short and free of the words that mark a complex
+     * request.
+     */
+    boolean isSimple(String prompt) {
+        if (prompt == null || prompt.length() > maxFastPromptChars) {
+            return false;
+        }
+        String padded = " " + CachingAIService.normalizePrompt(prompt) + " ";
+        for (String keyword : largeModelKeywords) {
+            if (padded.contains(" " + keyword + " ")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether the fast model's answer should be retried on the configured
+     * model. Failed calls are not escalated.
+     */
+    private static boolean needsEscalation(ObjectNode result) {
+        if (result.has("error")) {
+            return result.path(ClaudeAIService.NO_TOOL_USE).asBoolean(false);
+        }
+        String command = result.path("command").asText();
+        return "EXTRACT_DOM".equals(command) && result.path("params").path("selector").asText().isBlank();
+    }
+
+    private static CompletableFuture<ObjectNode> timed(TierStats stats, CompletableFuture<ObjectNode> call) {
+        long start = System.nanoTime();
+        return call.whenComplete((result, error) -> stats.record(System.nanoTime() - start));
+    }
+
+    public long getFastCallCount() {
+        return fast.calls.sum();
+    }
+
+    public long getFastAverageLatencyMillis() {
+        return fast.averageMillis();
+    }
+
+    public long getLargeCallCount() {
+        return large.calls.sum();
+    }
+
+    public long getLargeAverageLatencyMillis() {
+        return large.averageMillis();
+    }
+
+    /**
+     * Get the number of fast model answers that were retried on the configured model.
+     */
+    public long getEscalationCount() {
+        return escalations.sum();
+    }
+
+    @Override
+    public int getRunningCallCount() {
+        return delegate.getRunningCallCount();
+    }
+
+    @Override
+    public int getQueuedCallCount() {
+        return delegate.getQueuedCallCount();
+    }
+
+    @Override
+    public void shutdown() {
+        logger.info("AI model routing: fast {} calls ({} ms avg, {} escalated), large {} calls ({} ms avg)",
+                getFastCallCount(), getFastAverageLatencyMillis(), getEscalationCount(),
+                getLargeCallCount(), getLargeAverageLatencyMillis());
+        delegate.shutdown();
+    }
+
+    private static final class TierStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+
+        void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+        }
+
+        long averageMillis() {
+            long count = calls.sum();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.chromeagent.config;
 
+import com.chromeagent.server.TransportType;
+import com.chromeagent.session.MailboxOverflowPolicy;
 import io.github.cdimascio.dotenv.Dotenv;
 import io.github.cdimascio.dotenv.DotenvBuilder;
 import org.slf4j.Logger;
@@ -45,6 +47,38 @@ public class ConfigLoader {
                 .commandTimeoutSeconds(getInt("COMMAND_TIMEOUT_SECONDS", 30))
                 .reconnectMaxRetries(getInt("RECONNECT_MAX_RETRIES", 3))
                 .reconnectIntervalSeconds(getInt("RECONNECT_INTERVAL_SECONDS", 5))
+                .transportType(getTransportType("NETTY_TRANSPORT", TransportType.AUTO))
+                .maxFramePayloadBytes(getInt("WS_MAX_FRAME_BYTES", 65536))
+                .maxStreamedMessageBytes(getInt("WS_MAX_STREAMED_MESSAGE_BYTES", 16 * 1024 * 1024))
+                .timerTickMillis(getInt("TIMER_TICK_MILLIS", 100))
+                .timerWheelSize(getInt("TIMER_WHEEL_SIZE", 512))
+                .sessionShards(getInt("SESSION_SHARDS", Runtime.getRuntime().availableProcessors()))
+                .replayBufferMaxMessages(getInt("REPLAY_BUFFER_MAX_MESSAGES", 256))
+                .replayBufferMaxBytes(getInt("REPLAY_BUFFER_MAX_BYTES", 4 * 1024 * 1024))
+                .sessionSnapshotPath(get("SESSION_SNAPSHOT_PATH", ""))
+                .mailboxThreads(getInt("MAILBOX_THREADS", Runtime.getRuntime().availableProcessors() * 2))
+                .mailboxCapacity(getInt("MAILBOX_CAPACITY", 256))
+                .mailboxOverflowPolicy(getMailboxOverflowPolicy("MAILBOX_OVERFLOW_POLICY", MailboxOverflowPolicy.BACK_PRESSURE))
+                .aiMaxConcurrentCalls(getInt("AI_MAX_CONCURRENT_CALLS", 16))
+                .aiCacheMaxEntries(getInt("AI_CACHE_MAX_ENTRIES", 1000))
+                .aiCacheTtlSeconds(getInt("AI_CACHE_TTL_SECONDS", 600))
+                .claudeApiUrl(get("CLAUDE_API_URL", "https://api.anthropic.com/v1/messages"))
+                .aiStreaming(getBoolean("AI_STREAMING", false))
+                .aiIntentFastPath(getBoolean("AI_INTENT_FAST_PATH", false))
+                .aiFastModel(get("AI_FAST_MODEL", ""))
+                .aiFastMaxPromptChars(getInt("AI_FAST_MAX_PROMPT_CHARS", 120))
+                .aiLargeModelKeywords(get("AI_LARGE_MODEL_KEYWORDS", "then,each,every,compare,table,fields"))
+                .aiHedgePercentile(getInt("AI_HEDGE_PERCENTILE", 0))
+                .aiHedgeBudgetPercent(getInt("AI_HEDGE_BUDGET_PERCENT", 5))
+                .aiHedgeModel(get("AI_HEDGE_MODEL", ""))
+                .aiMaxRetries(getInt("AI_MAX_RETRIES", 2))
+                .aiRetryBudgetPercent(getInt("AI_RETRY_BUDGET_PERCENT", 10))
+                .aiCircuitFailureThreshold(getInt("AI_CIRCUIT_FAILURE_THRESHOLD", 5))
+                .aiCircuitOpenSeconds(getInt("AI_CIRCUIT_OPEN_SECONDS", 30))
+                .aiMultiTool(getBoolean("AI_MULTI_TOOL", false))
+                .aiContextTokenBudget(getInt("AI_CONTEXT_TOKEN_BUDGET", 0))
+                .aiContextMaxTurns(getInt("AI_CONTEXT_MAX_TURNS", 10))
+                .gaugeLogIntervalSeconds(getInt("GAUGE_LOG_INTERVAL_SECONDS", 0))
                 .build();
 
         logger.info("Configuration loaded: {}", config);
@@ -125,4 +159,60 @@ public class ConfigLoader {
             return defaultValue;
         }
     }
+
+    /**
+     * Get a boolean configuration value (true/false, yes/no, 1/0).
+     */
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String value = dotenv.get(key);
+
+        if (value == null || value.isBlank()) {
+            logger.debug("Configuration {} not set, using default: {}", key, defaultValue);
+            return defaultValue;
+        }
+        return switch (value.trim().toLowerCase()) {
+            case "true", "yes", "1" -> true;
+            case "false", "no", "0" -> false;
+            default -> {
+                logger.warn("Invalid boolean value for {}: {}. Using default: {}", key, value, defaultValue);
+                yield defaultValue;
+            }
+        };
+    }
+
+    /**
+     * Get a Netty transport configuration value (auto, nio, epoll, io_uring).
+     */
+    private static TransportType getTransportType(String key, TransportType defaultValue) {
+        String value = dotenv.get(key);
+
+        if (value == null || value.isBlank()) {
+            logger.debug("Configuration {} not set, using default: {}", key, defaultValue);
+            return defaultValue;
+        }
+        TransportType type = TransportType.fromValue(value.trim());
+        if (type == null) {
+            logger.warn("Invalid transport value for {}: {}. Using default: {}", key, value, defaultValue);
+            return defaultValue;
+        }
+        return type;
+    }
+
+    /**
+     * Get a mailbox overflow policy configuration value (reject, drop_oldest, back_pressure).
+     */
+    private static MailboxOverflowPolicy getMailboxOverflowPolicy(String key, MailboxOverflowPolicy defaultValue) {
+        String value = dotenv.get(key);
+
+        if (value == null || value.isBlank()) {
+            logger.debug("Configuration {} not set, using default: {}", key, defaultValue);
+            return defaultValue;
+        }
+        MailboxOverflowPolicy policy = MailboxOverflowPolicy.fromValue(value.trim());
+        if (policy == null) {
+            logger.warn("Invalid mailbox overflow policy for {}: {}. Using default: {}", key, value, defaultValue);
+            return defaultValue;
+        }
+        return policy;
+    }
 }
@@ -1,5 +1,8 @@
 package com.chromeagent.config;
 
+import com.chromeagent.server.TransportType;
+import com.chromeagent.session.MailboxOverflowPolicy;
+
 /**
  * Server configuration holder.
  * All settings are immutable after construction.
@@ -13,6 +16,38 @@ public class ServerConfig {
     private final int commandTimeoutSeconds;
     private final int reconnectMaxRetries;
     private final int reconnectIntervalSeconds;
+    private final TransportType transportType;
+    private final int maxFramePayloadBytes;
+    private final int maxStreamedMessageBytes;
+    private final int timerTickMillis;
+    private final int timerWheelSize;
+    private final int sessionShards;
+    private final int replayBufferMaxMessages;
+    private final int replayBufferMaxBytes;
+    private final String sessionSnapshotPath;
+    private final int mailboxThreads;
+    private final int mailboxCapacity;
+    private final MailboxOverflowPolicy mailboxOverflowPolicy;
+    private final int aiMaxConcurrentCalls;
+    private final int aiCacheMaxEntries;
+    private final int aiCacheTtlSeconds;
+    private final String claudeApiUrl;
+    private final boolean aiStreaming;
+    private final boolean aiIntentFastPath;
+    private final String aiFastModel;
+    private final int aiFastMaxPromptChars;
+    private final String aiLargeModelKeywords;
+    private final int aiHedgePercentile;
+    private final int aiHedgeBudgetPercent;
+    private final String aiHedgeModel;
+    private final int aiMaxRetries;
+    private final int aiRetryBudgetPercent;
+    private final int aiCircuitFailureThreshold;
+    private final int aiCircuitOpenSeconds;
+    private final boolean aiMultiTool;
+    private final int aiContextTokenBudget;
+    private final int aiContextMaxTurns;
+    private final int gaugeLogIntervalSeconds;
 
     private ServerConfig(Builder builder) {
         this.port = builder.port;
@@ -23,6 +58,38 @@ public class ServerConfig {
         this.commandTimeoutSeconds = builder.commandTimeoutSeconds;
         this.reconnectMaxRetries = builder.reconnectMaxRetries;
         this.reconnectIntervalSeconds = builder.reconnectIntervalSeconds;
+        this.transportType = builder.transportType;
+        this.maxFramePayloadBytes = builder.maxFramePayloadBytes;
+        this.maxStreamedMessageBytes = builder.maxStreamedMessageBytes;
+        this.timerTickMillis = builder.timerTickMillis;
+        this.timerWheelSize = builder.timerWheelSize;
+        this.sessionShards = builder.sessionShards;
+        this.replayBufferMaxMessages = builder.replayBufferMaxMessages;
+        this.replayBufferMaxBytes = builder.replayBufferMaxBytes;
+        this.sessionSnapshotPath = builder.sessionSnapshotPath;
+        this.mailboxThreads = builder.mailboxThreads;
+        this.mailboxCapacity = builder.mailboxCapacity;
+        this.mailboxOverflowPolicy = builder.mailboxOverflowPolicy;
+        this.aiMaxConcurrentCalls = builder.aiMaxConcurrentCalls;
+        this.aiCacheMaxEntries = builder.aiCacheMaxEntries;
+        this.aiCacheTtlSeconds = builder.aiCacheTtlSeconds;
+        this.claudeApiUrl = builder.claudeApiUrl;
+        this.aiStreaming = builder.aiStreaming;
+        this.aiIntentFastPath = builder.aiIntentFastPath;
+        this.aiFastModel = builder.aiFastModel;
+        this.aiFastMaxPromptChars = builder.aiFastMaxPromptChars;
+        this.aiLargeModelKeywords = builder.aiLargeModelKeywords;
+        this.aiHedgePercentile = builder.aiHedgePercentile;
+        this.aiHedgeBudgetPercent = builder.aiHedgeBudgetPercent;
+        this.aiHedgeModel = builder.aiHedgeModel;
+        this.aiMaxRetries = builder.aiMaxRetries;
+        this.aiRetryBudgetPercent = builder.aiRetryBudgetPercent;
+        this.aiCircuitFailureThreshold = builder.aiCircuitFailureThreshold;
+        this.aiCircuitOpenSeconds = builder.aiCircuitOpenSeconds;
+        this.aiMultiTool = builder.aiMultiTool;
+        this.aiContextTokenBudget = builder.aiContextTokenBudget;
+        this.aiContextMaxTurns = builder.aiContextMaxTurns;
+        this.gaugeLogIntervalSeconds = builder.gaugeLogIntervalSeconds;
     }
 
     public int getPort() {
@@ -57,6 +124,134 @@ public class ServerConfig {
         return reconnectIntervalSeconds;
     }
 
+    public TransportType getTransportType() {
+        return transportType;
+    }
+
+    public int getMaxFramePayloadBytes() {
+        return maxFramePayloadBytes;
+    }
+
+    public int getMaxStreamedMessageBytes() {
+        return maxStreamedMessageBytes;
+    }
+
+    public int getTimerTickMillis() {
+        return timerTickMillis;
+    }
+
+    public int getTimerWheelSize() {
+        return timerWheelSize;
+    }
+
+    public int getSessionShards() {
+        return sessionShards;
+    }
+
+    public int getReplayBufferMaxMessages() {
+        return replayBufferMaxMessages;
+    }
+
+    public int getReplayBufferMaxBytes() {
+        return replayBufferMaxBytes;
+    }
+
+    public String getSessionSnapshotPath() {
+        return sessionSnapshotPath;
+    }
+
+    public int getMailboxThreads() {
+        return mailboxThreads;
+    }
+
+    public int getMailboxCapacity() {
+        return mailboxCapacity;
+    }
+
+    public MailboxOverflowPolicy getMailboxOverflowPolicy() {
+        return mailboxOverflowPolicy;
+    }
+
+    public int getAiMaxConcurrentCalls() {
+        return aiMaxConcurrentCalls;
+    }
+
+    public int getAiCacheMaxEntries() {
+        return aiCacheMaxEntries;
+    }
+
+    public int getAiCacheTtlSeconds() {
+        return aiCacheTtlSeconds;
+    }
+
+    public String getClaudeApiUrl() {
+        return claudeApiUrl;
+    }
+
+    public boolean isAiStreaming() {
+        return aiStreaming;
+    }
+
+    public boolean isAiIntentFastPath() {
+        return aiIntentFastPath;
+    }
+
+    public String getAiFastModel() {
+        return aiFastModel;
+    }
+
+    public int getAiFastMaxPromptChars() {
+        return aiFastMaxPromptChars;
+    }
+
+    public String getAiLargeModelKeywords() {
+        return aiLargeModelKeywords;
+    }
+
+    public int getAiHedgePercentile() {
+        return aiHedgePercentile;
+    }
+
+    public int getAiHedgeBudgetPercent() {
+        return aiHedgeBudgetPercent;
+    }
+
+    public String getAiHedgeModel() {
+        return aiHedgeModel;
+    }
+
+    public int getAiMaxRetries() {
+        return aiMaxRetries;
+    }
+
+    public int getAiRetryBudgetPercent() {
+        return aiRetryBudgetPercent;
+    }
+
+    public int getAiCircuitFailureThreshold() {
+        return aiCircuitFailureThreshold;
+    }
+
+    public int getAiCircuitOpenSeconds() {
+        return aiCircuitOpenSeconds;
+    }
+
+    public boolean isAiMultiTool() {
+        return aiMultiTool;
+    }
+
+    public int getAiContextTokenBudget() {
+        return aiContextTokenBudget;
+    }
+
+    public int getAiContextMaxTurns() {
+        return aiContextMaxTurns;
+    }
+
+    public int getGaugeLogIntervalSeconds() {
+        return gaugeLogIntervalSeconds;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
@@ -70,6 +265,38 @@ public class ServerConfig {
         private int commandTimeoutSeconds = 30;
         private int reconnectMaxRetries = 3;
         private int reconnectIntervalSeconds = 5;
+        private TransportType transportType = TransportType.AUTO;
+        private int maxFramePayloadBytes = 65536;
+        private int maxStreamedMessageBytes = 16 * 1024 * 1024;
+        private int timerTickMillis = 100;
+        private int timerWheelSize = 512;
+        private int sessionShards = Runtime.getRuntime().availableProcessors();
+        private int replayBufferMaxMessages = 256;
+        private int replayBufferMaxBytes = 4 * 1024 * 1024;
+        private String sessionSnapshotPath = "";
+        private int mailboxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        private int mailboxCapacity = 256;
+        private MailboxOverflowPolicy mailboxOverflowPolicy = MailboxOverflowPolicy.BACK_PRESSURE;
+        private int aiMaxConcurrentCalls = 16;
+        private int aiCacheMaxEntries = 1000;
+        private int aiCacheTtlSeconds = 600;
+        private String claudeApiUrl = "https://api.anthropic.com/v1/messages";
+        private boolean aiStreaming = false;
+        private boolean aiIntentFastPath = false;
+        private String aiFastModel = "";
+        private int aiFastMaxPromptChars = 120;
+        private String aiLargeModelKeywords = "then,each,every,compare,table,fields";
+        private int aiHedgePercentile = 0;
+        private int aiHedgeBudgetPercent = 5;
+        private String aiHedgeModel = "";
+        private int aiMaxRetries = 2;
+        private int aiRetryBudgetPercent = 10;
+        private int aiCircuitFailureThreshold = 5;
+        private int aiCircuitOpenSeconds = 30;
+        private boolean aiMultiTool = false;
+        private int aiContextTokenBudget = 0;
+        private int aiContextMaxTurns = 10;
+        private int gaugeLogIntervalSeconds = 0;
 
         public Builder port(int port) {
             this.port = port;
@@ -111,6 +338,166 @@ public class ServerConfig {
             return this;
         }
 
+        public Builder transportType(TransportType transportType) {
+            this.transportType = transportType;
+            return this;
+        }
+
+        public Builder maxFramePayloadBytes(int maxFramePayloadBytes) {
+            this.maxFramePayloadBytes = maxFramePayloadBytes;
+            return this;
+        }
+
+        public Builder maxStreamedMessageBytes(int maxStreamedMessageBytes) {
+            this.maxStreamedMessageBytes = maxStreamedMessageBytes;
+            return this;
+        }
+
+        public Builder timerTickMillis(int timerTickMillis) {
+            this.timerTickMillis = timerTickMillis;
+            return this;
+        }
+
+        public Builder timerWheelSize(int timerWheelSize) {
+            this.timerWheelSize = timerWheelSize;
+            return this;
+        }
+
+        public Builder sessionShards(int sessionShards) {
+            this.sessionShards = sessionShards;
+            return this;
+        }
+
+        public Builder replayBufferMaxMessages(int replayBufferMaxMessages) {
+            this.replayBufferMaxMessages = replayBufferMaxMessages;
+            return this;
+        }
+
+        public Builder replayBufferMaxBytes(int replayBufferMaxBytes) {
+            this.replayBufferMaxBytes = replayBufferMaxBytes;
+            return this;
+        }
+
+        public Builder sessionSnapshotPath(String sessionSnapshotPath) {
+            this.sessionSnapshotPath = sessionSnapshotPath;
+            return this;
+        }
+
+        public Builder mailboxThreads(int mailboxThreads) {
+            this.mailboxThreads = mailboxThreads;
+            return this;
+        }
+
+        public Builder mailboxCapacity(int mailboxCapacity) {
+            this.mailboxCapacity = mailboxCapacity;
+            return this;
+        }
+
+        public Builder mailboxOverflowPolicy(MailboxOverflowPolicy mailboxOverflowPolicy) {
+            this.mailboxOverflowPolicy = mailboxOverflowPolicy;
+            return this;
+        }
+
+        public Builder aiMaxConcurrentCalls(int aiMaxConcurrentCalls) {
+            this.aiMaxConcurrentCalls = aiMaxConcurrentCalls;
+            return this;
+        }
+
+        public Builder aiCacheMaxEntries(int aiCacheMaxEntries) {
+            this.aiCacheMaxEntries = aiCacheMaxEntries;
+            return this;
+        }
+
+        public Builder aiCacheTtlSeconds(int aiCacheTtlSeconds) {
+            this.aiCacheTtlSeconds = aiCacheTtlSeconds;
+            return this;
+        }
+
+        public Builder claudeApiUrl(String claudeApiUrl) {
+            this.claudeApiUrl = claudeApiUrl;
+            return this;
+        }
+
+        public Builder aiStreaming(boolean aiStreaming) {
+            this.aiStreaming = aiStreaming;
+            return this;
+        }
+
+        public Builder aiIntentFastPath(boolean aiIntentFastPath) {
+            this.aiIntentFastPath = aiIntentFastPath;
+            return this;
+        }
+
+        public Builder aiFastModel(String aiFastModel) {
+            this.aiFastModel = aiFastModel;
+            return this;
+        }
+
+        public Builder aiFastMaxPromptChars(int aiFastMaxPromptChars) {
+            this.aiFastMaxPromptChars = aiFastMaxPromptChars;
+            return this;
+        }
+
+        public Builder aiLargeModelKeywords(String aiLargeModelKeywords) {
+            this.aiLargeModelKeywords = aiLargeModelKeywords;
+            return this;
+        }
+
+        public Builder aiHedgePercentile(int aiHedgePercentile) {
+            this.aiHedgePercentile = aiHedgePercentile;
+            return this;
+        }
+
+        public Builder aiHedgeBudgetPercent(int aiHedgeBudgetPercent) {
+            this.aiHedgeBudgetPercent = aiHedgeBudgetPercent;
+            return this;
+        }
+
+        public Builder aiHedgeModel(String aiHedgeModel) {
+            this.aiHedgeModel = aiHedgeModel;
+            return this;
+        }
+
+        public Builder aiMaxRetries(int aiMaxRetries) {
+            this.aiMaxRetries = aiMaxRetries;
+            return this;
+        }
+
+        public Builder aiRetryBudgetPercent(int aiRetryBudgetPercent) {
+            this.aiRetryBudgetPercent = aiRetryBudgetPercent;
+            return this;
+        }
+
+        public Builder aiCircuitFailureThreshold(int aiCircuitFailureThreshold) {
+            this.aiCircuitFailureThreshold = aiCircuitFailureThreshold;
+            return this;
+        }
+
+        public Builder aiCircuitOpenSeconds(int aiCircuitOpenSeconds) {
+            this.aiCircuitOpenSeconds = aiCircuitOpenSeconds;
+            return this;
+        }
+
+        public Builder aiMultiTool(boolean aiMultiTool) {
+            this.aiMultiTool = aiMultiTool;
+            return this;
+        }
+
+        public Builder aiContextTokenBudget(int aiContextTokenBudget) {
+            this.aiContextTokenBudget = aiContextTokenBudget;
+            return this;
+        }
+
+        public Builder aiContextMaxTurns(int aiContextMaxTurns) {
+            this.aiContextMaxTurns = aiContextMaxTurns;
+            return this;
+        }
+
+        public Builder gaugeLogIntervalSeconds(int gaugeLogIntervalSeconds) {
+            this.gaugeLogIntervalSeconds = gaugeLogIntervalSeconds;
+            return this;
+        }
+
         public ServerConfig build() {
             return new ServerConfig(this);
         }
@@ -126,6 +513,38 @@ public class ServerConfig {
                 ", commandTimeoutSeconds=" + commandTimeoutSeconds +
                 ", reconnectMaxRetries=" + reconnectMaxRetries +
                 ", reconnectIntervalSeconds=" + reconnectIntervalSeconds +
+                ", transportType=" + transportType +
+                ", maxFramePayloadBytes=" + maxFramePayloadBytes +
+                ", maxStreamedMessageBytes=" + maxStreamedMessageBytes +
+                ", timerTickMillis=" + timerTickMillis +
+                ", timerWheelSize=" + timerWheelSize +
+                ", sessionShards=" + sessionShards +
+                ", replayBufferMaxMessages=" + replayBufferMaxMessages +
+                ", replayBufferMaxBytes=" + replayBufferMaxBytes +
+                ", sessionSnapshotPath='" + sessionSnapshotPath + '\'' +
+                ", mailboxThreads=" + mailboxThreads +
+                ", mailboxCapacity=" + mailboxCapacity +
+                ", mailboxOverflowPolicy=" + mailboxOverflowPolicy +
+                ", aiMaxConcurrentCalls=" + aiMaxConcurrentCalls +
+                ", aiCacheMaxEntries=" + aiCacheMaxEntries +
+                ", aiCacheTtlSeconds=" + aiCacheTtlSeconds +
+                ", claudeApiUrl='" + claudeApiUrl + '\'' +
+                ", aiStreaming=" + aiStreaming +
+                ", aiIntentFastPath=" + aiIntentFastPath +
+                ", aiFastModel='" + aiFastModel + '\'' +
+                ", aiFastMaxPromptChars=" + aiFastMaxPromptChars +
+                ", aiLargeModelKeywords='" + aiLargeModelKeywords + '\'' +
+                ", aiHedgePercentile=" + aiHedgePercentile +
+                ", aiHedgeBudgetPercent=" + aiHedgeBudgetPercent +
+                ", aiHedgeModel='" + aiHedgeModel + '\'' +
+                ", aiMaxRetries=" + aiMaxRetries +
+                ", aiRetryBudgetPercent=" + aiRetryBudgetPercent +
+                ", aiCircuitFailureThreshold=" + aiCircuitFailureThreshold +
+                ", aiCircuitOpenSeconds=" + aiCircuitOpenSeconds +
+                ", aiMultiTool=" + aiMultiTool +
+                ", aiContextTokenBudget=" + aiContextTokenBudget +
+                ", aiContextMaxTurns=" + aiContextMaxTurns +
+                ", gaugeLogIntervalSeconds=" + gaugeLogIntervalSeconds +
                 '}';
     }
 }
@@ -10,11 +10,13 @@ public enum ErrorCode {
     INVALID_SELECTOR("INVALID_SELECTOR", "Invalid CSS selector"),
     INVALID_COMMAND("INVALID_COMMAND", "Unknown command type"),
     INVALID_MESSAGE("INVALID_MESSAGE", "Invalid message format"),
+    MESSAGE_TOO_LARGE("MESSAGE_TOO_LARGE", "Message exceeds the maximum size"),
     CONNECTION_LOST("CONNECTION_LOST", "WebSocket connection lost"),
     SESSION_EXPIRED("SESSION_EXPIRED", "Session has expired"),
     NO_EXTENSION_CONNECTED("NO_EXTENSION_CONNECTED", "No Chrome extension connected"),
     NO_AGENT_CONNECTED("NO_AGENT_CONNECTED", "No command agent connected"),
     NOT_PAIRED("NOT_PAIRED", "Session is not paired"),
+    SESSION_BUSY("SESSION_BUSY", "Too many messages queued for this session"),
     AI_ERROR("AI_ERROR", "AI service error"),
     INTERNAL_ERROR("INTERNAL_ERROR", "Internal server error");
 
@@ -4,7 +4,6 @@ import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageFactory;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -57,9 +56,8 @@ public class ErrorHandler {
         }
 
         Message errorMessage = MessageFactory.createError(errorCode.getCode(), message, requestId);
-        String json = codec.encode(errorMessage);
 
-        channel.writeAndFlush(new TextWebSocketFrame(json))
+        channel.writeAndFlush(codec.encodeFrame(channel, errorMessage))
                 .addListener(future -> {
                     if (future.isSuccess()) {
                         logger.debug("Error sent to client: {} - {}", errorCode.getCode(), message);
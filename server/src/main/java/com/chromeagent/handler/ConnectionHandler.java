@@ -1,5 +1,6 @@
 package com.chromeagent.handler;
 
+import com.chromeagent.message.WireFormat;
 import com.chromeagent.session.SessionManager;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
@@ -23,8 +24,12 @@ public class ConnectionHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
         if (evt instanceof WebSocketServerProtocolHandler.HandshakeComplete handshake) {
-            logger.info("WebSocket handshake completed: {} (path: {})",
-                    ctx.channel().id(), handshake.requestUri());
+            // Remember the negotiated wire format so every send to this channel uses it
+            WireFormat format = WireFormat.fromSubprotocol(handshake.selectedSubprotocol());
+            ctx.channel().attr(WireFormat.ATTRIBUTE_KEY).set(format);
+
+            logger.info("WebSocket handshake completed: {} (path: {}, format: {})",
+                    ctx.channel().id(), handshake.requestUri(), format);
             // Note: Session creation is deferred until CONNECT message is received
             // to properly determine client type (agent/extension)
         }
@@ -0,0 +1,490 @@
+package com.chromeagent.handler;
+
+import com.chromeagent.error.ErrorCode;
+import com.chromeagent.error.ErrorHandler;
+import com.chromeagent.message.MessageCodec;
+import com.chromeagent.message.MessageFactory;
+import com.chromeagent.message.MessageType;
+import com.chromeagent.message.WireFormat;
+import com.chromeagent.router.RequestTracker;
+import com.chromeagent.session.Session;
+import com.chromeagent.session.SessionManager;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Handles messages that arrive as several WebSocket fragments.
+ *
+ * Single-frame messages pass straight through to WebSocketFrameHandler.
+ * For fragmented messages the envelope is scanned incrementally until its
+ * type and requestId are known:
+ * - A JSON RESPONSE for a pending request, sent by the extension paired
+ *   with the requesting agent, is relayed to the agent fragment by
+ *   fragment, so it is never aggregated in memory. The agent gets a new
+ *   envelope header addressed to it, followed by the payload bytes as
+ *   they arrive.
+ * - Anything else is aggregated and handed on as a single frame.
+ * A RESPONSE is only streamed while the extension's mailbox is idle and the
+ * agent is live, so it cannot overtake earlier messages or bypass the
+ * agent's replay buffer; otherwise it takes the aggregated path too.
+ * Either way the whole message is capped at maxStreamedMessageBytes.
+ *
+ * Each streamed fragment restarts the request's timeout. A stream that ends
+ * early (size cap, malformed JSON, extension disconnected) still closes the
+ * agent's open message and fails the request with an error to the agent.
+ */
+public class FragmentedMessageHandler extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(FragmentedMessageHandler.class);
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final byte[] PAYLOAD_FIELD = ",\"payload\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CLOSE_OBJECT = "}".getBytes(StandardCharsets.UTF_8);
+
+    private enum Mode { IDLE, SCANNING, AGGREGATING, STREAMING, DISCARDING }
+
+    private final SessionManager sessionManager;
+    private final RequestTracker requestTracker;
+    private final ErrorHandler errorHandler;
+    private final int maxMessageBytes;
+
+    private Mode mode = Mode.IDLE;
+    private WireFormat format;
+    private CompositeByteBuf buffered;
+    private EnvelopeScanner scanner;
+    private Channel agentChannel;
+    private String requestId;
+    private long totalBytes;
+
+    public FragmentedMessageHandler(SessionManager sessionManager, RequestTracker requestTracker,
+                                    int maxMessageBytes) {
+        this.sessionManager = sessionManager;
+        this.requestTracker = requestTracker;
+        this.errorHandler = ErrorHandler.getInstance();
+        this.maxMessageBytes = maxMessageBytes;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!(msg instanceof WebSocketFrame frame)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        boolean startsMessage = frame instanceof TextWebSocketFrame || frame instanceof BinaryWebSocketFrame;
+        if (mode == Mode.IDLE && startsMessage && frame.isFinalFragment()) {
+            // Unfragmented message - nothing to do here
+            ctx.fireChannelRead(frame);
+            return;
+        }
+
+        try {
+            if (mode == Mode.IDLE && startsMessage) {
+                startMessage(ctx, frame);
+            } else if (frame instanceof ContinuationWebSocketFrame && mode != Mode.IDLE) {
+                continueMessage(ctx, frame);
+            } else {
+                ctx.fireChannelRead(frame.retain());
+            }
+        } finally {
+            ReferenceCountUtil.release(frame);
+        }
+    }
+
+    private void startMessage(ChannelHandlerContext ctx, WebSocketFrame frame) throws IOException {
+        format = frame instanceof TextWebSocketFrame ? WireFormat.JSON : WireFormat.SMILE;
+        buffered = ctx.alloc().compositeBuffer(Integer.MAX_VALUE);
+        totalBytes = 0;
+
+        // Only JSON envelopes can be scanned and relayed as-is
+        if (format == WireFormat.JSON) {
+            scanner = new EnvelopeScanner();
+            mode = Mode.SCANNING;
+        } else {
+            mode = Mode.AGGREGATING;
+        }
+        logger.debug("Fragmented {} message started on channel: {}", format, ctx.channel().id());
+
+        continueMessage(ctx, frame);
+    }
+
+    private void continueMessage(ChannelHandlerContext ctx, WebSocketFrame frame) throws IOException {
+        ByteBuf content = frame.content();
+        long fragmentStart = totalBytes;
+        totalBytes += content.readableBytes();
+        if (totalBytes > maxMessageBytes && mode != Mode.DISCARDING) {
+            abort(ctx);
+        }
+
+        switch (mode) {
+            case SCANNING -> {
+                buffered.addComponent(true, content.retain());
+                if (!scan(ctx, content)) {
+                    // Not valid JSON: aggregate it and let decoding report it
+                    scanner.close();
+                    mode = Mode.AGGREGATING;
+                } else if (scanner.isResolved() || frame.isFinalFragment()) {
+                    resolve(ctx, frame.isFinalFragment());
+                }
+            }
+            case AGGREGATING -> buffered.addComponent(true, content.retain());
+            case STREAMING -> stream(ctx, content, fragmentStart, frame.isFinalFragment());
+            default -> {
+                // DISCARDING: drop the remaining fragments
+            }
+        }
+
+        if (frame.isFinalFragment()) {
+            finishMessage(ctx);
+        }
+    }
+
+    /**
+     * Decide between streaming to the agent and aggregating, once the
+     * envelope header is known (or the message ended first).
+     */
+    private void resolve(ChannelHandlerContext ctx, boolean complete) {
+        requestId = scanner.requestId;
+
+        Session agent = complete ? null : streamTarget(ctx);
+        if (agent == null) {
+            // Regular path: routed through the sender's mailbox, buffered for a resuming agent
+            scanner.close();
+            mode = Mode.AGGREGATING;
+            return;
+        }
+
+        // Open the agent's message with a header addressed to it, then the
+        // payload bytes buffered so far
+        int payloadStart = (int) scanner.payloadStart;
+        ByteBuf opening = Unpooled.wrappedBuffer(
+                Unpooled.wrappedBuffer(header(agent)),
+                buffered.retainedSlice(payloadStart, buffered.readableBytes() - payloadStart));
+        if (!sessionManager.writeIfLive(agent, new TextWebSocketFrame(false, 0, opening))) {
+            scanner.close();
+            mode = Mode.AGGREGATING;
+            return;
+        }
+
+        agentChannel = agent.getChannel();
+        mode = Mode.STREAMING;
+        releaseBuffered();
+        logger.info("Streaming fragmented RESPONSE to agent for requestId: {}", requestId);
+    }
+
+    /**
+     * Get the agent to stream the message to, or null if it must be
+     * aggregated: not a JSON RESPONSE with an object payload, not from the
+     * extension paired with the request's agent, or the extension still has
+     * earlier messages queued.
+     */
+    private Session streamTarget(ChannelHandlerContext ctx) {
+        if (scanner.type != MessageType.RESPONSE || requestId == null
+                || scanner.payloadStart < 0 || scanner.payloadEnd >= 0) {
+            return null;
+        }
+
+        Session sender = sessionManager.getSessionByChannel(ctx.channel()).orElse(null);
+        RequestTracker.PendingRequest pending = requestTracker.getPendingRequest(requestId).orElse(null);
+        if (sender == null || pending == null || pending.getGroup() != null
+                || !pending.isAnswerableBy(sender) || !sender.getMailbox().isIdle()) {
+            return null;
+        }
+
+        Session agent = sessionManager.getSessionById(pending.getSessionId()).orElse(null);
+        if (agent == null || !agent.isActive() || WireFormat.of(agent.getChannel()) != WireFormat.JSON) {
+            return null;
+        }
+        sender.updateActivity();
+        return agent;
+    }
+
+    /**
+     * Build the start of the relayed message, up to and including the
+     * payload field name. Target and sessionId address the agent.
+     */
+    private byte[] header(Session agent) {
+        ObjectNode header = MessageCodec.getInstance().getMapper().createObjectNode();
+        header.put("messageId", scanner.messageId != null ? scanner.messageId : MessageFactory.generateId());
+        header.put("requestId", requestId);
+        if (scanner.timestamp != null) {
+            header.put("timestamp", scanner.timestamp);
+        }
+        header.put("type", MessageType.RESPONSE.getValue());
+        header.put("source", "extension");
+        header.put("target", "agent");
+        header.put("sessionId", agent.getSessionId());
+
+        byte[] json;
+        try {
+            json = MessageCodec.getInstance().getMapper().writeValueAsBytes(header);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to encode relay header", e);
+        }
+        // Drop the closing brace: the payload field follows
+        byte[] bytes = Arrays.copyOf(json, json.length - 1 + PAYLOAD_FIELD.length);
+        System.arraycopy(PAYLOAD_FIELD, 0, bytes, json.length - 1, PAYLOAD_FIELD.length);
+        return bytes;
+    }
+
+    /**
+     * Relay one fragment of a streamed message, restarting the request's
+     * timeout. A request that timed out meanwhile stops the stream: the
+     * agent already got the timeout error.
+     */
+    private void stream(ChannelHandlerContext ctx, ByteBuf content, long fragmentStart, boolean last) {
+        if (!agentChannel.isActive()) {
+            logger.warn("Agent channel closed while streaming requestId: {}", requestId);
+            mode = Mode.DISCARDING;
+            return;
+        }
+        if (requestTracker.extendRequest(requestId).isEmpty()) {
+            logger.warn("Request {} no longer pending, dropping the rest of its stream", requestId);
+            closeAgentMessage();
+            mode = Mode.DISCARDING;
+            return;
+        }
+        if (!scan(ctx, content)) {
+            abortStream(ErrorCode.INVALID_MESSAGE, "Response was malformed and was truncated");
+            errorHandler.sendError(ctx.channel(), ErrorCode.INVALID_MESSAGE,
+                    "Malformed JSON in fragmented message", requestId);
+            return;
+        }
+        relay(content, fragmentStart, last);
+    }
+
+    /**
+     * Feed a fragment to the envelope scanner.
+     *
+     * @return false if the message is not valid JSON
+     */
+    private boolean scan(ChannelHandlerContext ctx, ByteBuf content) {
+        try {
+            scanner.feed(ByteBufUtil.getBytes(content));
+            return true;
+        } catch (IOException e) {
+            logger.warn("Malformed fragmented message on channel {}: {}", ctx.channel().id(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Relay the payload bytes of one fragment. Envelope fields after the
+     * payload are dropped; the final fragment closes the agent's message.
+     */
+    private void relay(ByteBuf content, long fragmentStart, boolean last) {
+        long fragmentEnd = fragmentStart + content.readableBytes();
+        long payloadEnd = scanner.payloadEnd >= 0 ? Math.min(scanner.payloadEnd, fragmentEnd) : fragmentEnd;
+        int length = (int) Math.max(0, payloadEnd - fragmentStart);
+        ByteBuf payload = content.retainedSlice(content.readerIndex(), length);
+
+        if (last) {
+            agentChannel.writeAndFlush(new ContinuationWebSocketFrame(true, 0,
+                    Unpooled.wrappedBuffer(payload, Unpooled.wrappedBuffer(CLOSE_OBJECT))));
+        } else if (length > 0) {
+            agentChannel.writeAndFlush(new ContinuationWebSocketFrame(false, 0, payload));
+        } else {
+            payload.release();
+        }
+    }
+
+    private void finishMessage(ChannelHandlerContext ctx) {
+        switch (mode) {
+            case AGGREGATING -> {
+                WebSocketFrame aggregated = format == WireFormat.JSON
+                        ? new TextWebSocketFrame(buffered)
+                        : new BinaryWebSocketFrame(buffered);
+                buffered = null;
+                logger.debug("Fragmented message aggregated: {} bytes", totalBytes);
+                ctx.fireChannelRead(aggregated);
+            }
+            case STREAMING -> {
+                requestTracker.completeRequest(requestId);
+                logger.info("Fragmented RESPONSE streamed to agent for requestId: {} ({} bytes)",
+                        requestId, totalBytes);
+            }
+            default -> {
+                // DISCARDING: already reported
+            }
+        }
+        reset();
+    }
+
+    /**
+     * Stop processing a message that exceeded the size cap.
+     */
+    private void abort(ChannelHandlerContext ctx) {
+        logger.warn("Fragmented message on channel {} exceeds {} bytes, discarding",
+                ctx.channel().id(), maxMessageBytes);
+
+        if (mode == Mode.STREAMING) {
+            abortStream(ErrorCode.MESSAGE_TOO_LARGE,
+                    "Response exceeded " + maxMessageBytes + " bytes and was truncated");
+        }
+        errorHandler.sendError(ctx.channel(), ErrorCode.MESSAGE_TOO_LARGE,
+                "Message exceeds " + maxMessageBytes + " bytes", requestId);
+
+        releaseBuffered();
+        mode = Mode.DISCARDING;
+    }
+
+    /**
+     * End a message being streamed to the agent early: close the agent's
+     * open message, so its later frames are no longer held back, and fail
+     * the request with an error to the agent.
+     */
+    private void abortStream(ErrorCode errorCode, String reason) {
+        closeAgentMessage();
+        if (requestTracker.completeRequest(requestId).isPresent()) {
+            errorHandler.sendError(agentChannel, errorCode, reason, requestId);
+        }
+        mode = Mode.DISCARDING;
+    }
+
+    private void closeAgentMessage() {
+        if (agentChannel.isActive()) {
+            agentChannel.writeAndFlush(new ContinuationWebSocketFrame(true, 0, Unpooled.EMPTY_BUFFER));
+        }
+    }
+
+    private void reset() {
+        releaseBuffered();
+        if (scanner != null) {
+            scanner.close();
+            scanner = null;
+        }
+        mode = Mode.IDLE;
+        agentChannel = null;
+        requestId = null;
+        totalBytes = 0;
+    }
+
+    private void releaseBuffered() {
+        if (buffered != null) {
+            buffered.release();
+            buffered = null;
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (mode == Mode.STREAMING) {
+            logger.warn("Extension disconnected while streaming requestId: {}", requestId);
+            abortStream(ErrorCode.CONNECTION_LOST, "Extension disconnected before the response was complete");
+        }
+        reset();
+        super.channelInactive(ctx);
+    }
+
+    /**
+     * Incrementally scans a JSON envelope using Jackson's non-blocking
+     * parser. It resolves at the start of the payload (or the end of the
+     * message) with the header fields seen so far, and keeps tracking the
+     * payload until it closes, so a relay knows which bytes belong to it.
+     */
+    private static final class EnvelopeScanner {
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        private int depth;
+        private String field;
+        private boolean resolved;
+        private boolean done;
+        MessageType type;
+        String requestId;
+        String messageId;
+        String timestamp;
+        /** Byte offsets of an object or array payload; -1 until seen. */
+        long payloadStart = -1;
+        long payloadEnd = -1;
+
+        EnvelopeScanner() throws IOException {
+            this.parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+        }
+
+        void feed(byte[] data) throws IOException {
+            if (done) {
+                return;
+            }
+            feeder.feedInput(data, 0, data.length);
+
+            JsonToken token;
+            while (!done && (token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                switch (token) {
+                    case START_OBJECT, START_ARRAY -> {
+                        if (depth == 1 && "payload".equals(field) && payloadStart < 0) {
+                            payloadStart = parser.currentTokenLocation().getByteOffset();
+                            resolved = true;
+                        }
+                        depth++;
+                    }
+                    case END_OBJECT, END_ARRAY -> {
+                        depth--;
+                        if (depth == 1 && payloadStart >= 0 && payloadEnd < 0) {
+                            payloadEnd = parser.currentLocation().getByteOffset();
+                            done = true; // nothing after the payload is needed
+                        } else if (depth == 0) {
+                            resolved = true;
+                            done = true;
+                        }
+                    }
+                    case FIELD_NAME -> {
+                        if (depth == 1) {
+                            field = parser.currentName();
+                        }
+                    }
+                    default -> {
+                        if (depth == 1 && field != null) {
+                            scalar(token);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void scalar(JsonToken token) throws IOException {
+            String text = token == JsonToken.VALUE_NULL ? null : parser.getText();
+            switch (field) {
+                case "type" -> type = MessageType.fromValue(text);
+                case "requestId" -> requestId = text;
+                case "messageId" -> messageId = text;
+                case "timestamp" -> timestamp = text;
+                case "payload" -> resolved = true; // scalar payload: nothing to stream
+                default -> {
+                    // Other header fields are rewritten or dropped
+                }
+            }
+        }
+
+        boolean isResolved() {
+            return resolved;
+        }
+
+        void close() {
+            try {
+                parser.close();
+            } catch (IOException e) {
+                // Nothing buffered worth reporting
+            }
+        }
+    }
+}
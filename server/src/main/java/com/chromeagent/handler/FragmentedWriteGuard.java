@@ -0,0 +1,62 @@
+package com.chromeagent.handler;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.PendingWriteQueue;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * Keeps outbound fragmented messages contiguous.
+ * While a fragmented message is being relayed to this channel, other data
+ * frames (status, errors, heartbeats) are held back and written after the
+ * final fragment, since WebSocket forbids interleaving data messages.
+ * Control frames (ping, pong, close) pass through immediately.
+ */
+public class FragmentedWriteGuard extends ChannelDuplexHandler {
+    private PendingWriteQueue deferred;
+    private boolean inFragmentedMessage;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        deferred = new PendingWriteQueue(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        if (!inFragmentedMessage) {
+            if (isDataFrame(msg) && !((WebSocketFrame) msg).isFinalFragment()) {
+                inFragmentedMessage = true;
+            }
+            ctx.write(msg, promise);
+            return;
+        }
+
+        if (msg instanceof ContinuationWebSocketFrame continuation) {
+            ctx.write(msg, promise);
+            if (continuation.isFinalFragment()) {
+                inFragmentedMessage = false;
+                deferred.removeAndWriteAll();
+            }
+        } else if (isDataFrame(msg)) {
+            deferred.add(msg, promise);
+        } else {
+            ctx.write(msg, promise);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        deferred.removeAndFailAll(new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    private static boolean isDataFrame(Object msg) {
+        return msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame;
+    }
+}
@@ -6,7 +6,6 @@ import com.chromeagent.session.Session;
 import com.chromeagent.session.SessionManager;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
 import org.slf4j.Logger;
@@ -54,7 +53,7 @@ public class HeartbeatHandler extends ChannelInboundHandlerAdapter {
         sessionManager.getSessionByChannel(ctx.channel()).ifPresent(session -> {
             var heartbeat = MessageFactory.createHeartbeat();
             heartbeat.setSessionId(session.getSessionId());
-            ctx.writeAndFlush(new TextWebSocketFrame(codec.encode(heartbeat)));
+            ctx.writeAndFlush(codec.encodeFrame(ctx.channel(), heartbeat));
             logger.trace("Heartbeat sent to session: {}", session.getSessionId());
         });
     }
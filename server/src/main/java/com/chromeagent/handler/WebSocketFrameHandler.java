@@ -5,24 +5,30 @@ import com.chromeagent.error.ErrorHandler;
 import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageType;
+import com.chromeagent.message.WireFormat;
 import com.chromeagent.router.MessageRouter;
 import com.chromeagent.session.ClientType;
 import com.chromeagent.session.Session;
 import com.chromeagent.session.SessionManager;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Optional;
 
 /**
- * Handles incoming WebSocket text frames.
+ * Handles incoming WebSocket data frames.
+ * Text frames carry JSON, binary frames carry Smile.
  * Parses messages and routes them to the appropriate handler.
  */
-public class WebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSocketFrame> {
+public class WebSocketFrameHandler extends SimpleChannelInboundHandler<WebSocketFrame> {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameHandler.class);
+    private static final int MAX_AFFINITY_KEY_LENGTH = 256;
 
     private final MessageRouter router;
     private final SessionManager sessionManager;
@@ -37,16 +43,26 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSo
     }
 
     @Override
-    protected void channelRead0(ChannelHandlerContext ctx, TextWebSocketFrame frame) {
-        String text = frame.text();
-        logger.debug("Received frame: {}", text);
+    protected void channelRead0(ChannelHandlerContext ctx, WebSocketFrame frame) {
+        WireFormat format;
+        if (frame instanceof TextWebSocketFrame) {
+            format = WireFormat.JSON;
+        } else if (frame instanceof BinaryWebSocketFrame) {
+            format = WireFormat.SMILE;
+        } else {
+            logger.warn("Unsupported frame type on channel {}: {}",
+                    ctx.channel().id(), frame.getClass().getSimpleName());
+            return;
+        }
+        logger.debug("Received {} frame: {} bytes", format, frame.content().readableBytes());
+
+        // Parse message straight from the frame buffer
+        Optional<Message> messageOpt = codec.decode(frame.content(), format);
 
-        // Parse message
-        Optional<Message> messageOpt = codec.decode(text);
         if (messageOpt.isEmpty()) {
-            logger.error("Failed to parse message: {}", text);
+            logger.error("Failed to parse message on channel: {}", ctx.channel().id());
             errorHandler.sendError(ctx.channel(), ErrorCode.INVALID_MESSAGE,
-                    "Failed to parse message as JSON");
+                    "Failed to parse message");
             return;
         }
 
@@ -73,8 +89,34 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSo
                 return;
             }
 
+            // Resume a session still in its retention window. Buffered
+            // messages are replayed first, so the CONNECT_ACK that follows
+            // tells the client it is caught up.
+            Optional<Session> resumed = resumeSession(ctx, message, clientType);
+            if (resumed.isPresent()) {
+                router.route(resumed.get(), message);
+                return;
+            }
+
+            // Optional pairing key (user, browser profile...). Client-asserted and
+            // not authenticated: it groups cooperating clients, it is no tenant boundary
+            JsonNode payload = message.getPayload();
+            JsonNode keyNode = payload != null ? payload.get("affinityKey") : null;
+            String affinityKey = null;
+            if (keyNode != null && !keyNode.isNull()) {
+                if (!keyNode.isTextual() || keyNode.asText().isBlank()
+                        || keyNode.asText().length() > MAX_AFFINITY_KEY_LENGTH) {
+                    errorHandler.sendError(ctx.channel(), ErrorCode.INVALID_MESSAGE,
+                            "CONNECT affinityKey must be a non-empty string of at most "
+                                    + MAX_AFFINITY_KEY_LENGTH + " characters",
+                            message.getMessageId());
+                    return;
+                }
+                affinityKey = keyNode.asText();
+            }
+
             // Create session
-            session = sessionManager.createSession(ctx.channel(), clientType);
+            session = sessionManager.createSession(ctx.channel(), clientType, affinityKey);
             logger.info("New session created: {} ({})", session.getSessionId(), clientType);
         } else {
             session = sessionOpt.get();
@@ -84,6 +126,35 @@ public class WebSocketFrameHandler extends SimpleChannelInboundHandler<TextWebSo
         router.route(session, message);
     }
 
+    /**
+     * Reattach a disconnected session named by the CONNECT sessionId. The
+     * CONNECT payload must carry the resumeToken from the session's
+     * CONNECT_ACK, so only the client that owned the session can take it over.
+     */
+    private Optional<Session> resumeSession(ChannelHandlerContext ctx, Message message, ClientType clientType) {
+        String sessionId = message.getSessionId();
+        if (sessionId == null || sessionId.isBlank()) {
+            return Optional.empty();
+        }
+
+        JsonNode payload = message.getPayload();
+        String token = payload != null ? payload.path("resumeToken").asText(null) : null;
+        boolean owned = sessionManager.getSessionById(sessionId)
+                .map(existing -> existing.getClientType() == clientType && existing.matchesResumeToken(token))
+                .orElse(false);
+        if (!owned) {
+            logger.warn("Cannot resume session {}: unknown session or wrong resume token", sessionId);
+            return Optional.empty();
+        }
+        if (!sessionManager.handleReconnect(ctx.channel(), sessionId)) {
+            logger.info("Cannot resume session {}, creating a new one", sessionId);
+            return Optional.empty();
+        }
+
+        router.getRequestTracker().repointRequests(sessionId, ctx.channel());
+        return sessionManager.getSessionByChannel(ctx.channel());
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         logger.error("WebSocket handler error on channel {}: {}",
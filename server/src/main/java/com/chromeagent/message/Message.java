@@ -1,10 +1,12 @@
 package com.chromeagent.message;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import java.time.Instant;
+import java.util.Arrays;
 import java.util.Objects;
 
 /**
@@ -19,8 +21,13 @@ public class Message {
     private MessageType type;       // Message type
     private String source;          // Message source: agent, extension, server
     private String target;          // Message target: agent, extension, server
-    private JsonNode payload;       // Message payload (varies by type)
+    private volatile JsonNode payload; // Message payload (varies by type)
     private String sessionId;       // Session this message belongs to
+    private Integer chunkIndex;     // Position of a RESPONSE_CHUNK within its request (0-based)
+    private Boolean lastChunk;      // True on the final RESPONSE_CHUNK of a request
+
+    @JsonIgnore
+    private volatile byte[] rawPayload; // Undecoded JSON payload, kept as-is for relaying
 
     public Message() {
         this.timestamp = Instant.now().toString();
@@ -74,12 +81,65 @@ public class Message {
         this.target = target;
     }
 
+    /**
+     * Get the payload tree. A payload still held as raw bytes is parsed
+     * on first access, so pure relays never pay for it.
+     *
+     * Messages move between the event loop, mailbox executors and HTTP
+     * callbacks, so the parse runs under the message's lock and the tree is
+     * published before the raw bytes are dropped.
+     */
     public JsonNode getPayload() {
-        return payload;
+        JsonNode tree = payload;
+        if (tree == null && rawPayload != null) {
+            synchronized (this) {
+                tree = payload;
+                byte[] raw = rawPayload;
+                if (tree == null && raw != null) {
+                    tree = MessageCodec.getInstance().readPayload(raw);
+                    payload = tree;
+                    rawPayload = null;
+                }
+            }
+        }
+        return tree;
+    }
+
+    public synchronized void setPayload(JsonNode payload) {
+        this.payload = payload;
+        this.rawPayload = null;
     }
 
-    public void setPayload(JsonNode payload) {
-        this.payload = payload;
+    /**
+     * Check if the payload is still held as undecoded JSON bytes.
+     */
+    @JsonIgnore
+    public boolean hasRawPayload() {
+        return rawPayload != null;
+    }
+
+    /**
+     * Get the undecoded payload bytes, or null once the payload has been
+     * parsed. Read it once and use that value rather than checking
+     * hasRawPayload() first.
+     */
+    byte[] getRawPayload() {
+        return rawPayload;
+    }
+
+    /**
+     * Get a copy of at most maxBytes of the undecoded payload, or null once
+     * the payload has been parsed. Lets a caller peek at a relayed payload
+     * without parsing or copying all of it.
+     */
+    public byte[] getRawPayloadPrefix(int maxBytes) {
+        byte[] raw = rawPayload;
+        return raw != null ? Arrays.copyOf(raw, Math.min(raw.length, maxBytes)) : null;
+    }
+
+    synchronized void setRawPayload(byte[] rawPayload) {
+        this.payload = null;
+        this.rawPayload = rawPayload;
     }
 
     public String getSessionId() {
@@ -90,6 +150,30 @@ public class Message {
         this.sessionId = sessionId;
     }
 
+    public Integer getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(Integer chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public Boolean getLastChunk() {
+        return lastChunk;
+    }
+
+    public void setLastChunk(Boolean lastChunk) {
+        this.lastChunk = lastChunk;
+    }
+
+    /**
+     * Check if this is the final chunk of a chunked response.
+     */
+    @JsonIgnore
+    public boolean isFinalChunk() {
+        return Boolean.TRUE.equals(lastChunk);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -112,6 +196,7 @@ public class Message {
                 ", source='" + source + '\'' +
                 ", target='" + target + '\'' +
                 ", sessionId='" + sessionId + '\'' +
+                (chunkIndex != null ? ", chunkIndex=" + chunkIndex : "") +
                 '}';
     }
 }
@@ -1,30 +1,68 @@
 package com.chromeagent.message;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 /**
- * JSON codec for Message serialization/deserialization.
+ * Codec for Message serialization/deserialization.
+ * Supports JSON (text frames) and Smile (binary frames) wire formats.
  * Thread-safe singleton.
  */
 public class MessageCodec {
     private static final Logger logger = LoggerFactory.getLogger(MessageCodec.class);
     private static final MessageCodec INSTANCE = new MessageCodec();
+    private static final int MAX_LOG_PREVIEW_BYTES = 512;
 
     private final ObjectMapper mapper;
+    private final ObjectMapper smileMapper;
 
     private MessageCodec() {
-        this.mapper = new ObjectMapper();
-        this.mapper.registerModule(new JavaTimeModule());
-        this.mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
-        this.mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        this.mapper = configure(new ObjectMapper());
+
+        // Share repeated values as well as keys: DOM payloads repeat markup heavily
+        SmileFactory smileFactory = SmileFactory.builder()
+                .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+                .build();
+        this.smileMapper = configure(new ObjectMapper(smileFactory));
+    }
+
+    private static ObjectMapper configure(ObjectMapper mapper) {
+        mapper.registerModule(new JavaTimeModule());
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        mapper.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+        mapper.configure(DeserializationFeature.FAIL_ON_TRAILING_TOKENS, true);
+        return mapper;
     }
 
     public static MessageCodec getInstance() {
@@ -46,6 +84,112 @@ public class MessageCodec {
         }
     }
 
+    /**
+     * Encode a Message straight into a pooled buffer from the destination
+     * channel's allocator and wrap it in a WebSocket frame. No intermediate
+     * String or byte[] is created.
+     *
+     * @param channel Destination channel (its negotiated wire format is used)
+     * @param message Message to encode
+     * @return Text frame for JSON clients, binary frame for Smile clients
+     */
+    public WebSocketFrame encodeFrame(Channel channel, Message message) {
+        WireFormat format = WireFormat.of(channel);
+        ByteBufAllocator alloc = channel != null ? channel.alloc() : ByteBufAllocator.DEFAULT;
+        ByteBuf buf = alloc.buffer();
+        try (ByteBufOutputStream out = new ByteBufOutputStream(buf)) {
+            byte[] raw = format == WireFormat.JSON ? message.getRawPayload() : null;
+            if (raw != null) {
+                writeRelay(out, message, raw);
+            } else {
+                mapperFor(format).writeValue((OutputStream) out, message);
+            }
+        } catch (IOException e) {
+            buf.release();
+            logger.error("Failed to encode message: {}", message, e);
+            throw new RuntimeException("Failed to encode message", e);
+        } catch (Throwable t) {
+            buf.release(); // e.g., a Jackson RuntimeException: don't leak the pooled buffer
+            throw t;
+        }
+        return format == WireFormat.SMILE ? new BinaryWebSocketFrame(buf) : new TextWebSocketFrame(buf);
+    }
+
+    /**
+     * Encode a Message to JSON bytes, e.g. to hold it until a channel is
+     * available. Raw payloads are copied verbatim.
+     *
+     * @param message Message to encode
+     * @return UTF-8 JSON bytes
+     */
+    public byte[] encodeBytes(Message message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] raw = message.getRawPayload();
+            if (raw != null) {
+                writeRelay(out, message, raw);
+            } else {
+                mapper.writeValue((OutputStream) out, message);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to encode message: {}", message, e);
+            throw new RuntimeException("Failed to encode message", e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Wrap a message produced by encodeBytes in a frame for a channel.
+     * JSON clients get the bytes as they are; Smile clients get it re-encoded.
+     *
+     * @param channel Destination channel
+     * @param json Message encoded as JSON
+     * @return Frame in the channel's wire format
+     */
+    public WebSocketFrame encodeFrame(Channel channel, byte[] json) {
+        if (WireFormat.of(channel) == WireFormat.JSON) {
+            return new TextWebSocketFrame(Unpooled.wrappedBuffer(json));
+        }
+        Message message = decode(Unpooled.wrappedBuffer(json), WireFormat.JSON)
+                .orElseThrow(() -> new IllegalArgumentException("Buffered message is not valid JSON"));
+        return encodeFrame(channel, message);
+    }
+
+    /**
+     * Write a message whose payload is still raw JSON: the envelope is
+     * serialized field by field and the payload bytes are copied to the
+     * output as they are, without building a tree or decoding them.
+     */
+    private void writeRelay(OutputStream out, Message message, byte[] raw) throws IOException {
+        try (JsonGenerator gen = mapper.getFactory().createGenerator(out)) {
+            gen.writeStartObject();
+            writeField(gen, "messageId", message.getMessageId());
+            writeField(gen, "requestId", message.getRequestId());
+            writeField(gen, "timestamp", message.getTimestamp());
+            writeField(gen, "type", message.getType() != null ? message.getType().getValue() : null);
+            writeField(gen, "source", message.getSource());
+            writeField(gen, "target", message.getTarget());
+
+            gen.writeFieldName("payload");
+            gen.writeRawValue(new RawUtf8(raw));
+
+            writeField(gen, "sessionId", message.getSessionId());
+            if (message.getChunkIndex() != null) {
+                gen.writeNumberField("chunkIndex", message.getChunkIndex());
+            }
+            if (message.getLastChunk() != null) {
+                gen.writeBooleanField("lastChunk", message.getLastChunk());
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    private static void writeField(JsonGenerator gen, String name, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value);
+        }
+    }
+
     /**
      * Decode a JSON string to Message.
      *
@@ -57,11 +201,242 @@ public class MessageCodec {
             Message message = mapper.readValue(json, Message.class);
             return Optional.of(message);
         } catch (JsonProcessingException e) {
-            logger.error("Failed to decode message: {}", json, e);
+            logger.error("Failed to decode message: {}", json.length() > MAX_LOG_PREVIEW_BYTES
+                    ? json.substring(0, MAX_LOG_PREVIEW_BYTES) + "...(truncated)" : json, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Decode a message straight from a frame buffer without materializing
+     * a String or byte[] copy. The buffer's reader index is left untouched.
+     *
+     * @param content Encoded message
+     * @param format Wire format of the data
+     * @return Optional containing the decoded Message, or empty if decoding fails
+     */
+    public Optional<Message> decode(ByteBuf content, WireFormat format) {
+        try (ByteBufInputStream in = new ByteBufInputStream(content.duplicate())) {
+            Message message = format == WireFormat.JSON
+                    ? decodeEnvelope(in, content)
+                    : smileMapper.readValue((InputStream) in, Message.class);
+            return Optional.of(message);
+        } catch (IOException e) {
+            logger.error("Failed to decode {} message ({} bytes): {}",
+                    format, content.readableBytes(), preview(content, format), e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Decode only the envelope fields of a JSON message. Object and array
+     * payloads are skipped by the parser and kept as raw bytes, so relayed
+     * messages never build a payload tree.
+     */
+    private Message decodeEnvelope(InputStream in, ByteBuf content) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Message must be a JSON object");
+            }
+
+            Message message = new Message();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "messageId" -> message.setMessageId(textValue(parser, token));
+                    case "requestId" -> message.setRequestId(textValue(parser, token));
+                    case "timestamp" -> message.setTimestamp(textValue(parser, token));
+                    case "source" -> message.setSource(textValue(parser, token));
+                    case "target" -> message.setTarget(textValue(parser, token));
+                    case "sessionId" -> message.setSessionId(textValue(parser, token));
+                    case "chunkIndex" -> message.setChunkIndex(intValue(parser, token));
+                    case "lastChunk" -> message.setLastChunk(booleanValue(parser, token));
+                    case "type" -> {
+                        String value = textValue(parser, token);
+                        MessageType type = MessageType.fromValue(value);
+                        if (value != null && type == null) {
+                            throw new JsonParseException(parser, "Unknown message type: " + value);
+                        }
+                        message.setType(type);
+                    }
+                    case "payload" -> {
+                        if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                            long start = parser.currentTokenLocation().getByteOffset();
+                            parser.skipChildren();
+                            long end = parser.currentLocation().getByteOffset();
+
+                            byte[] raw = new byte[(int) (end - start)];
+                            content.getBytes(content.readerIndex() + (int) start, raw);
+                            message.setRawPayload(raw);
+                        } else if (token == JsonToken.VALUE_NULL) {
+                            message.setPayload(null);
+                        } else {
+                            message.setPayload(mapper.readTree(parser));
+                        }
+                    }
+                    default -> parser.skipChildren();
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Trailing content after message");
+            }
+            return message;
+        }
+    }
+
+    private static String textValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isScalarValue()) {
+            throw new JsonParseException(parser, "Expected scalar value for " + parser.currentName());
+        }
+        return parser.getText();
+    }
+
+    private static Integer intValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.VALUE_NUMBER_INT) {
+            throw new JsonParseException(parser, "Expected integer value for " + parser.currentName());
+        }
+        return parser.getIntValue();
+    }
+
+    private static Boolean booleanValue(JsonParser parser, JsonToken token) throws IOException {
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (!token.isBoolean()) {
+            throw new JsonParseException(parser, "Expected boolean value for " + parser.currentName());
+        }
+        return token == JsonToken.VALUE_TRUE;
+    }
+
+    /**
+     * Parse a raw JSON payload into a tree.
+     *
+     * @param raw UTF-8 JSON bytes
+     * @return Payload tree
+     */
+    JsonNode readPayload(byte[] raw) {
+        try {
+            return mapper.readTree(raw);
+        } catch (IOException e) {
+            logger.error("Failed to parse relayed payload ({} bytes)", raw.length, e);
+            throw new RuntimeException("Failed to parse payload", e);
+        }
+    }
+
+    /**
+     * Render at most MAX_LOG_PREVIEW_BYTES of a payload for logging.
+     */
+    private static String preview(ByteBuf content, WireFormat format) {
+        int length = Math.min(content.readableBytes(), MAX_LOG_PREVIEW_BYTES);
+        String head = format == WireFormat.SMILE
+                ? ByteBufUtil.hexDump(content, content.readerIndex(), length)
+                : content.toString(content.readerIndex(), length, StandardCharsets.UTF_8);
+        return length < content.readableBytes() ? head + "...(truncated)" : head;
+    }
+
+    private ObjectMapper mapperFor(WireFormat format) {
+        return format == WireFormat.SMILE ? smileMapper : mapper;
+    }
+
+    /**
+     * Raw UTF-8 JSON handed to the generator as a raw value. A byte-based
+     * generator copies the bytes straight to its output; the quoted forms
+     * are never used for raw values.
+     */
+    private static final class RawUtf8 implements SerializableString {
+        private final byte[] bytes;
+
+        RawUtf8(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getValue() {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int charLength() {
+            return getValue().length();
+        }
+
+        @Override
+        public byte[] asUnquotedUTF8() {
+            return bytes;
+        }
+
+        @Override
+        public int appendUnquotedUTF8(byte[] buffer, int offset) {
+            if (offset + bytes.length > buffer.length) {
+                return -1;
+            }
+            System.arraycopy(bytes, 0, buffer, offset, bytes.length);
+            return bytes.length;
+        }
+
+        @Override
+        public int appendUnquoted(char[] buffer, int offset) {
+            String value = getValue();
+            if (offset + value.length() > buffer.length) {
+                return -1;
+            }
+            value.getChars(0, value.length(), buffer, offset);
+            return value.length();
+        }
+
+        @Override
+        public int writeUnquotedUTF8(OutputStream out) throws IOException {
+            out.write(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public int putUnquotedUTF8(ByteBuffer buffer) {
+            if (bytes.length > buffer.remaining()) {
+                return -1;
+            }
+            buffer.put(bytes);
+            return bytes.length;
+        }
+
+        @Override
+        public char[] asQuotedChars() {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+
+        @Override
+        public byte[] asQuotedUTF8() {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+
+        @Override
+        public int appendQuotedUTF8(byte[] buffer, int offset) {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+
+        @Override
+        public int appendQuoted(char[] buffer, int offset) {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+
+        @Override
+        public int writeQuotedUTF8(OutputStream out) {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+
+        @Override
+        public int putQuotedUTF8(ByteBuffer buffer) {
+            throw new UnsupportedOperationException("Raw JSON is never quoted");
+        }
+    }
+
     /**
      * Get the underlying ObjectMapper for custom operations.
      *
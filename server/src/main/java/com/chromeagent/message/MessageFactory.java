@@ -28,6 +28,14 @@ public class MessageFactory {
      * Create a CONNECT_ACK message.
      */
     public static Message createConnectAck(String sessionId) {
+        return createConnectAck(sessionId, null);
+    }
+
+    /**
+     * Create a CONNECT_ACK message carrying the token the client needs to
+     * resume the session after a disconnect.
+     */
+    public static Message createConnectAck(String sessionId, String resumeToken) {
         Message msg = new Message();
         msg.setMessageId(generateId());
         msg.setType(MessageType.CONNECT_ACK);
@@ -38,6 +46,9 @@ public class MessageFactory {
         ObjectNode payload = mapper.createObjectNode();
         payload.put("sessionId", sessionId);
         payload.put("status", "connected");
+        if (resumeToken != null) {
+            payload.put("resumeToken", resumeToken);
+        }
         msg.setPayload(payload);
 
         return msg;
@@ -103,6 +114,22 @@ public class MessageFactory {
         return msg;
     }
 
+    /**
+     * Create a RESPONSE message from the server (e.g., aggregated results).
+     */
+    public static Message createResponse(String requestId, JsonNode payload) {
+        Message msg = new Message();
+        msg.setMessageId(generateId());
+        msg.setRequestId(requestId);
+        msg.setType(MessageType.RESPONSE);
+        msg.setSource("server");
+        msg.setTarget("agent");
+        msg.setTimestamp(Instant.now().toString());
+        msg.setPayload(payload);
+
+        return msg;
+    }
+
     /**
      * Create a STATUS message.
      */
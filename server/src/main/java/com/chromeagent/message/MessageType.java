@@ -10,6 +10,7 @@ public enum MessageType {
     CONNECT_ACK("CONNECT_ACK"),   // Server -> Client: Connection acknowledgment
     COMMAND("COMMAND"),           // Server -> Extension: Execute command
     RESPONSE("RESPONSE"),         // Extension -> Server: Command result
+    RESPONSE_CHUNK("RESPONSE_CHUNK"), // Extension -> Server: Partial command result (numbered)
     CHAT("CHAT"),                 // Agent <-> Server: Chat message (triggers AI)
     STATUS("STATUS"),             // Any -> Any: Status change notification
     HEARTBEAT("HEARTBEAT"),       // Both: Keep-alive ping
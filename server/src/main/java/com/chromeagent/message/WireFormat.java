@@ -0,0 +1,58 @@
+package com.chromeagent.message;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * Wire formats a client can negotiate through the WebSocket subprotocol.
+ * JSON travels in text frames, SMILE (binary JSON) in binary frames.
+ * Clients that request no subprotocol get JSON.
+ */
+public enum WireFormat {
+    JSON("chrome-agent.json"),
+    SMILE("chrome-agent.smile");
+
+    /**
+     * Channel attribute holding the format negotiated during the handshake.
+     */
+    public static final AttributeKey<WireFormat> ATTRIBUTE_KEY = AttributeKey.valueOf("wireFormat");
+
+    private final String subprotocol;
+
+    WireFormat(String subprotocol) {
+        this.subprotocol = subprotocol;
+    }
+
+    public String getSubprotocol() {
+        return subprotocol;
+    }
+
+    /**
+     * Comma-separated list of supported subprotocols for the handshake.
+     */
+    public static String supportedSubprotocols() {
+        return JSON.subprotocol + "," + SMILE.subprotocol;
+    }
+
+    public static WireFormat fromSubprotocol(String subprotocol) {
+        if (subprotocol != null) {
+            for (WireFormat format : values()) {
+                if (format.subprotocol.equalsIgnoreCase(subprotocol)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /**
+     * Get the wire format negotiated for a channel (JSON if none).
+     */
+    public static WireFormat of(Channel channel) {
+        if (channel == null) {
+            return JSON;
+        }
+        WireFormat format = channel.attr(ATTRIBUTE_KEY).get();
+        return format != null ? format : JSON;
+    }
+}
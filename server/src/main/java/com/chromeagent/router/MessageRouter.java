@@ -1,6 +1,7 @@
 package com.chromeagent.router;
 
 import com.chromeagent.ai.AIService;
+import com.chromeagent.ai.ConversationStore;
 import com.chromeagent.config.ServerConfig;
 import com.chromeagent.error.ErrorCode;
 import com.chromeagent.error.ErrorHandler;
@@ -8,15 +9,21 @@ import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageType;
 import com.chromeagent.router.handlers.*;
 import com.chromeagent.session.Session;
+import com.chromeagent.session.SessionMailbox;
 import com.chromeagent.session.SessionManager;
+import io.netty.channel.Channel;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Central message router that dispatches messages to appropriate handlers.
+ * Handlers run on the sending session's mailbox, off the I/O event loop.
  * Thread-safe singleton pattern.
  */
 public class MessageRouter {
@@ -25,17 +32,27 @@ public class MessageRouter {
     private final Map<MessageType, MessageHandler> handlers;
     private final ErrorHandler errorHandler;
     private final RequestTracker requestTracker;
+    private final ConversationStore conversations;
 
-    public MessageRouter(ServerConfig config, SessionManager sessionManager, AIService aiService) {
+    public MessageRouter(ServerConfig config, SessionManager sessionManager, AIService aiService, Timer timer) {
         this.handlers = new EnumMap<>(MessageType.class);
         this.errorHandler = ErrorHandler.getInstance();
-        this.requestTracker = new RequestTracker(config);
+        this.requestTracker = new RequestTracker(config, timer);
+
+        // Per-session conversation memory, freed with the session
+        if (config.getAiContextTokenBudget() > 0) {
+            this.conversations = new ConversationStore(config);
+            sessionManager.addRemovalListener(session -> conversations.remove(session.getSessionId()));
+        } else {
+            this.conversations = null;
+        }
 
         // Register handlers
         registerHandler(MessageType.CONNECT, new ConnectHandler());
-        registerHandler(MessageType.CHAT, new ChatHandler(aiService, sessionManager, requestTracker));
+        registerHandler(MessageType.CHAT, new ChatHandler(aiService, sessionManager, requestTracker, conversations));
         registerHandler(MessageType.COMMAND, new CommandHandler(sessionManager, requestTracker));
-        registerHandler(MessageType.RESPONSE, new ResponseHandler(requestTracker));
+        registerHandler(MessageType.RESPONSE, new ResponseHandler(sessionManager, requestTracker, conversations));
+        registerHandler(MessageType.RESPONSE_CHUNK, new ResponseChunkHandler(sessionManager, requestTracker));
         registerHandler(MessageType.HEARTBEAT, new HeartbeatMessageHandler());
 
         logger.info("MessageRouter initialized with {} handlers", handlers.size());
@@ -87,15 +104,43 @@ public class MessageRouter {
         // Update session activity
         session.updateActivity();
 
+        // Heartbeats are answered inline; ordering does not matter for them
+        if (type == MessageType.HEARTBEAT) {
+            dispatch(handler, session, message);
+            return;
+        }
+
         logger.debug("Routing {} message from session: {}", type, session.getSessionId());
 
+        // Run the handler on the session's mailbox: in order per session,
+        // in parallel across sessions, never on the I/O event loop
+        Channel source = session.getChannel();
+        SessionMailbox.Result result = session.getMailbox().submit(
+                () -> dispatch(handler, session, message), source);
+
+        if (result == SessionMailbox.Result.REJECTED) {
+            logger.warn("Mailbox full, rejecting {} from session: {}", type, session.getSessionId());
+            errorHandler.sendError(source, ErrorCode.SESSION_BUSY,
+                    "Too many messages queued for this session", message.getMessageId());
+        } else if (result == SessionMailbox.Result.DROPPED_OLDEST) {
+            logger.warn("Mailbox full, dropped oldest queued message of session: {}", session.getSessionId());
+        }
+    }
+
+    private CompletableFuture<Void> dispatch(MessageHandler handler, Session session, Message message) {
+        CompletableFuture<Void> result;
         try {
-            handler.handle(session, message);
+            result = handler.handleAsync(session, message);
         } catch (Exception e) {
-            logger.error("Error handling message type {}: {}", type, e.getMessage(), e);
-            errorHandler.sendError(session.getChannel(), ErrorCode.INTERNAL_ERROR,
-                    "Error processing message: " + e.getMessage(), message.getMessageId());
+            result = CompletableFuture.failedFuture(e);
         }
+        return result.exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            logger.error("Error handling message type {}: {}", message.getType(), cause.getMessage(), cause);
+            errorHandler.sendError(session.getChannel(), ErrorCode.INTERNAL_ERROR,
+                    "Error processing message: " + cause.getMessage(), message.getMessageId());
+            return null;
+        });
     }
 
     /**
@@ -105,6 +150,13 @@ public class MessageRouter {
         return requestTracker;
     }
 
+    /**
+     * Get the conversation contexts, or null if conversation context is disabled.
+     */
+    public ConversationStore getConversationStore() {
+        return conversations;
+    }
+
     /**
      * Shutdown the router and its components.
      */
@@ -3,14 +3,30 @@ package com.chromeagent.router;
 import com.chromeagent.config.ServerConfig;
 import com.chromeagent.error.ErrorCode;
 import com.chromeagent.error.ErrorHandler;
+import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageType;
+import com.chromeagent.session.ClientType;
+import com.chromeagent.session.Session;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.netty.channel.Channel;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.*;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Tracks pending requests for proper request-response correlation.
@@ -19,13 +35,21 @@ import java.util.concurrent.*;
 public class RequestTracker {
     private static final Logger logger = LoggerFactory.getLogger(RequestTracker.class);
 
+    private static final ObjectMapper mapper = new ObjectMapper();
+    /** Fields copied from a sub-request's RESPONSE payload into the aggregate. */
+    private static final List<String> RESULT_FIELDS = List.of("data", "error", "streamed");
+
     private final ConcurrentHashMap<String, PendingRequest> pendingRequests = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService timeoutScheduler;
+    /** Pending request IDs by requester session ID, for re-pointing on resume. */
+    private final ConcurrentHashMap<String, Set<String>> requestsBySession = new ConcurrentHashMap<>();
+    private final Timer timer;
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder timedOutCount = new LongAdder();
     private final ErrorHandler errorHandler;
     private final int timeoutSeconds;
 
-    public RequestTracker(ServerConfig config) {
-        this.timeoutScheduler = Executors.newScheduledThreadPool(1);
+    public RequestTracker(ServerConfig config, Timer timer) {
+        this.timer = timer;
         this.errorHandler = ErrorHandler.getInstance();
         this.timeoutSeconds = config.getCommandTimeoutSeconds();
     }
@@ -48,16 +72,63 @@ public class RequestTracker {
         );
 
         // Schedule timeout
-        ScheduledFuture<?> timeoutTask = timeoutScheduler.schedule(() -> {
-            handleTimeout(requestId);
-        }, timeoutSeconds, TimeUnit.SECONDS);
-
-        pending.setTimeoutTask(timeoutTask);
-        pendingRequests.put(requestId, pending);
+        pending.setTimeoutTask(scheduleTimeout(requestId));
+        add(pending);
 
         logger.debug("Tracking request: {} (timeout: {}s)", requestId, timeoutSeconds);
     }
 
+    /**
+     * Track the sub-requests of a request fanned out as several commands.
+     * Each sub-request is tracked and timed out on its own; once every one
+     * has a result (a response or a timeout) the aggregated payload is
+     * passed to onComplete.
+     *
+     * @param requestId Request ID of the original CHAT
+     * @param commands Commands sent, in order
+     * @param sourceChannel The channel that originated the request
+     * @param sessionId The session ID of the requester
+     * @param onComplete Receives the aggregated RESPONSE payload
+     * @return Sub-request IDs, one per command
+     */
+    public List<String> trackGroup(String requestId, List<String> commands, Channel sourceChannel,
+                                   String sessionId, Consumer<ObjectNode> onComplete) {
+        RequestGroup group = new RequestGroup(requestId, commands, onComplete);
+        for (int i = 0; i < commands.size(); i++) {
+            String subRequestId = group.getSubRequestId(i);
+            PendingRequest pending = new PendingRequest(
+                    subRequestId,
+                    sourceChannel,
+                    sessionId,
+                    Instant.now(),
+                    MessageType.CHAT
+            );
+            pending.setGroup(group, i);
+            pending.setTimeoutTask(scheduleTimeout(subRequestId));
+            add(pending);
+        }
+
+        logger.debug("Tracking request group: {} ({} commands, timeout: {}s)",
+                requestId, commands.size(), timeoutSeconds);
+        return group.getSubRequestIds();
+    }
+
+    /**
+     * Record the result of a completed sub-request, and deliver the
+     * aggregated response if it was the last one outstanding.
+     *
+     * @param pending The sub-request, already removed from tracking
+     * @param payload Its RESPONSE payload
+     */
+    public void completeGroupMember(PendingRequest pending, JsonNode payload) {
+        RequestGroup group = pending.getGroup();
+        if (group.complete(pending.getGroupIndex(), payload)) {
+            logger.info("Request group completed: {} ({} commands)",
+                    group.getRequestId(), group.getSubRequestIds().size());
+            group.onComplete.accept(group.toPayload());
+        }
+    }
+
     /**
      * Complete a request and return the original requester info.
      *
@@ -65,7 +136,7 @@ public class RequestTracker {
      * @return The pending request info, or empty if not found
      */
     public Optional<PendingRequest> completeRequest(String requestId) {
-        PendingRequest pending = pendingRequests.remove(requestId);
+        PendingRequest pending = remove(requestId);
         if (pending == null) {
             logger.warn("No pending request found for requestId: {}", requestId);
             return Optional.empty();
@@ -73,6 +144,7 @@ public class RequestTracker {
 
         // Cancel timeout
         pending.cancelTimeout();
+        completedCount.increment();
 
         long durationMs = java.time.Duration.between(pending.getCreatedAt(), Instant.now()).toMillis();
         logger.debug("Request completed: {} (duration: {}ms)", requestId, durationMs);
@@ -80,17 +152,112 @@ public class RequestTracker {
         return Optional.of(pending);
     }
 
+    /**
+     * Keep a request open and restart its timeout (e.g., when a chunk arrives).
+     *
+     * @param requestId The request ID
+     * @return The pending request info, or empty if not found
+     */
+    public Optional<PendingRequest> extendRequest(String requestId) {
+        PendingRequest pending = pendingRequests.get(requestId);
+        if (pending == null) {
+            logger.warn("No pending request found for requestId: {}", requestId);
+            return Optional.empty();
+        }
+
+        pending.cancelTimeout();
+        pending.setTimeoutTask(scheduleTimeout(requestId));
+
+        logger.debug("Request extended: {} (timeout: {}s)", requestId, timeoutSeconds);
+        return Optional.of(pending);
+    }
+
+    private void add(PendingRequest pending) {
+        pendingRequests.put(pending.getRequestId(), pending);
+        if (pending.getSessionId() != null) {
+            requestsBySession.compute(pending.getSessionId(), (sessionId, ids) -> {
+                Set<String> set = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                set.add(pending.getRequestId());
+                return set;
+            });
+        }
+    }
+
+    private PendingRequest remove(String requestId) {
+        PendingRequest pending = pendingRequests.remove(requestId);
+        if (pending != null && pending.getSessionId() != null) {
+            requestsBySession.computeIfPresent(pending.getSessionId(), (sessionId, ids) -> {
+                ids.remove(requestId);
+                return ids.isEmpty() ? null : ids;
+            });
+        }
+        return pending;
+    }
+
+    private Timeout scheduleTimeout(String requestId) {
+        return timer.newTimeout(timeout -> handleTimeout(requestId), timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Look up a pending request without completing it.
+     *
+     * @param requestId The request ID
+     * @return The pending request info, or empty if not found
+     */
+    public Optional<PendingRequest> getPendingRequest(String requestId) {
+        return Optional.ofNullable(pendingRequests.get(requestId));
+    }
+
+    /**
+     * Point the pending requests of a session at a new channel after the
+     * session reconnected, so timeouts and streamed responses reach it.
+     *
+     * @param sessionId Session ID of the requester
+     * @param channel The session's new channel
+     * @return Number of requests re-pointed
+     */
+    public int repointRequests(String sessionId, Channel channel) {
+        Set<String> ids = requestsBySession.get(sessionId);
+        if (ids == null) {
+            return 0;
+        }
+        int count = 0;
+        for (String requestId : ids) {
+            PendingRequest pending = pendingRequests.get(requestId);
+            if (pending != null) {
+                pending.setSourceChannel(channel);
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("Re-pointed {} pending request(s) to reconnected session: {}", count, sessionId);
+        }
+        return count;
+    }
+
     /**
      * Handle request timeout.
      */
     private void handleTimeout(String requestId) {
-        PendingRequest pending = pendingRequests.remove(requestId);
+        PendingRequest pending = remove(requestId);
         if (pending == null) {
             return; // Already completed
         }
 
+        timedOutCount.increment();
         logger.warn("Request timed out: {} (after {}s)", requestId, timeoutSeconds);
 
+        // A sub-request's timeout becomes its entry in the aggregated response
+        if (pending.getGroup() != null) {
+            ObjectNode payload = mapper.createObjectNode();
+            payload.put("success", false);
+            ObjectNode error = payload.putObject("error");
+            error.put("code", ErrorCode.TIMEOUT.getCode());
+            error.put("message", "Command execution timed out after " + timeoutSeconds + " seconds");
+            completeGroupMember(pending, payload);
+            return;
+        }
+
         // Send timeout error to original requester
         Channel sourceChannel = pending.getSourceChannel();
         if (sourceChannel != null && sourceChannel.isActive()) {
@@ -117,51 +284,71 @@ public class RequestTracker {
         return pendingRequests.size();
     }
 
+    /**
+     * Get the total number of requests completed with a response.
+     */
+    public long getCompletedCount() {
+        return completedCount.sum();
+    }
+
+    /**
+     * Get the total number of requests that timed out.
+     */
+    public long getTimedOutCount() {
+        return timedOutCount.sum();
+    }
+
     /**
      * Cancel all pending requests (e.g., on shutdown).
      */
     public void cancelAll() {
         pendingRequests.values().forEach(pending -> {
             pending.cancelTimeout();
+            if (pending.getGroup() != null && pending.getGroupIndex() > 0) {
+                return; // one error per request group
+            }
+            String requestId = pending.getGroup() != null
+                    ? pending.getGroup().getRequestId() : pending.getRequestId();
             Channel sourceChannel = pending.getSourceChannel();
             if (sourceChannel != null && sourceChannel.isActive()) {
                 errorHandler.sendError(
                         sourceChannel,
                         ErrorCode.INTERNAL_ERROR,
                         "Server shutting down",
-                        pending.getRequestId()
+                        requestId
                 );
             }
         });
         pendingRequests.clear();
+        requestsBySession.clear();
     }
 
     /**
-     * Shutdown the tracker.
+     * Shutdown the tracker. The shared timer is owned and stopped by the server.
      */
     public void shutdown() {
         cancelAll();
-        timeoutScheduler.shutdown();
-        try {
-            if (!timeoutScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                timeoutScheduler.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            timeoutScheduler.shutdownNow();
-            Thread.currentThread().interrupt();
-        }
     }
 
     /**
      * Represents a pending request awaiting response.
      */
     public static class PendingRequest {
+        private static final int MAX_BUFFERED_CHUNKS = 256;
+
         private final String requestId;
-        private final Channel sourceChannel;
+        private volatile Channel sourceChannel;
         private final String sessionId;
         private final Instant createdAt;
         private final MessageType originalType;
-        private ScheduledFuture<?> timeoutTask;
+        private Timeout timeoutTask;
+        private RequestGroup group;
+        private int groupIndex;
+
+        // Chunked responses: out-of-order chunks wait here until their turn
+        private final TreeMap<Integer, Message> bufferedChunks = new TreeMap<>();
+        private int nextChunkIndex;
+        private boolean chunksComplete;
 
         public PendingRequest(String requestId, Channel sourceChannel, String sessionId,
                               Instant createdAt, MessageType originalType) {
@@ -180,6 +367,10 @@ public class RequestTracker {
             return sourceChannel;
         }
 
+        public void setSourceChannel(Channel sourceChannel) {
+            this.sourceChannel = sourceChannel;
+        }
+
         public String getSessionId() {
             return sessionId;
         }
@@ -192,14 +383,159 @@ public class RequestTracker {
             return originalType;
         }
 
-        public void setTimeoutTask(ScheduledFuture<?> timeoutTask) {
+        /**
+         * Check whether a session may answer this request: only the
+         * extension paired with the requesting agent may.
+         */
+        public boolean isAnswerableBy(Session session) {
+            return session.getClientType() == ClientType.EXTENSION
+                    && sessionId.equals(session.getPairedSessionId());
+        }
+
+        /**
+         * Get the group this sub-request belongs to, or null for a plain request.
+         */
+        public RequestGroup getGroup() {
+            return group;
+        }
+
+        public int getGroupIndex() {
+            return groupIndex;
+        }
+
+        void setGroup(RequestGroup group, int groupIndex) {
+            this.group = group;
+            this.groupIndex = groupIndex;
+        }
+
+        public void setTimeoutTask(Timeout timeoutTask) {
             this.timeoutTask = timeoutTask;
         }
 
         public void cancelTimeout() {
-            if (timeoutTask != null && !timeoutTask.isDone()) {
-                timeoutTask.cancel(false);
+            if (timeoutTask != null && !timeoutTask.isExpired()) {
+                timeoutTask.cancel();
+            }
+        }
+
+        /**
+         * Accept a response chunk and return the chunks that can now be
+         * delivered in order. Duplicates are ignored.
+         *
+         * @param chunk Chunk with a chunkIndex
+         * @return Deliverable chunks in order, or null if too many chunks are
+         *         already waiting for a missing predecessor
+         */
+        public synchronized List<Message> acceptChunk(Message chunk) {
+            int index = chunk.getChunkIndex();
+            if (chunksComplete || index < nextChunkIndex || bufferedChunks.containsKey(index)) {
+                return List.of();
+            }
+            if (bufferedChunks.size() >= MAX_BUFFERED_CHUNKS) {
+                return null;
+            }
+            bufferedChunks.put(index, chunk);
+
+            List<Message> ready = new ArrayList<>();
+            Message next;
+            while ((next = bufferedChunks.remove(nextChunkIndex)) != null) {
+                ready.add(next);
+                nextChunkIndex++;
+                if (next.isFinalChunk()) {
+                    chunksComplete = true;
+                    bufferedChunks.clear();
+                    break;
+                }
+            }
+            return ready;
+        }
+
+        /**
+         * Check if the final chunk has been delivered.
+         */
+        public synchronized boolean isChunkStreamComplete() {
+            return chunksComplete;
+        }
+    }
+
+    /**
+     * The sub-requests of one CHAT fanned out as several commands.
+     */
+    public static class RequestGroup {
+        private final String requestId;
+        private final List<String> commands;
+        private final List<String> subRequestIds;
+        private final JsonNode[] results;
+        private final Consumer<ObjectNode> onComplete;
+        private int remaining;
+
+        RequestGroup(String requestId, List<String> commands, Consumer<ObjectNode> onComplete) {
+            this.requestId = requestId;
+            this.commands = List.copyOf(commands);
+            this.results = new JsonNode[commands.size()];
+            this.onComplete = onComplete;
+            this.remaining = commands.size();
+
+            List<String> ids = new ArrayList<>(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                ids.add(requestId + "#" + i);
+            }
+            this.subRequestIds = List.copyOf(ids);
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getSubRequestId(int index) {
+            return subRequestIds.get(index);
+        }
+
+        public List<String> getSubRequestIds() {
+            return subRequestIds;
+        }
+
+        /**
+         * Record a sub-request's result. Later results for the same index are ignored.
+         *
+         * @return true if this was the last result outstanding
+         */
+        synchronized boolean complete(int index, JsonNode payload) {
+            if (results[index] != null) {
+                return false;
             }
+            results[index] = payload != null ? payload : mapper.createObjectNode();
+            return --remaining == 0;
+        }
+
+        /**
+         * Build the aggregated RESPONSE payload: overall success plus one
+         * entry per command, in order.
+         */
+        synchronized ObjectNode toPayload() {
+            ObjectNode payload = mapper.createObjectNode();
+            ArrayNode entries = mapper.createArrayNode();
+            boolean success = true;
+
+            for (int i = 0; i < results.length; i++) {
+                JsonNode result = results[i];
+                boolean ok = result.path("success").asBoolean(false);
+                success &= ok;
+
+                ObjectNode entry = entries.addObject();
+                entry.put("requestId", subRequestIds.get(i));
+                entry.put("command", commands.get(i));
+                entry.put("success", ok);
+                for (String field : RESULT_FIELDS) {
+                    if (result.has(field)) {
+                        entry.set(field, result.get(field));
+                    }
+                }
+            }
+
+            payload.put("success", success);
+            payload.set("results", entries);
+            return payload;
         }
     }
 }
@@ -1,6 +1,9 @@
 package com.chromeagent.router.handlers;
 
+import com.chromeagent.ai.AIRequest;
 import com.chromeagent.ai.AIService;
+import com.chromeagent.ai.ConversationContext;
+import com.chromeagent.ai.ConversationStore;
 import com.chromeagent.error.ErrorCode;
 import com.chromeagent.error.ErrorHandler;
 import com.chromeagent.message.*;
@@ -9,17 +12,18 @@ import com.chromeagent.session.Session;
 import com.chromeagent.session.SessionManager;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 /**
  * Handles CHAT messages from agents.
- * 1. Calls AI service to convert natural language to command
- * 2. Routes the command to the paired extension
+ * 1. Calls AI service to convert natural language to command(s)
+ * 2. Routes the command(s) to the paired extension
  * 3. Tracks the request for response correlation
  */
 public class ChatHandler implements MessageHandler {
@@ -29,18 +33,36 @@ public class ChatHandler implements MessageHandler {
     private final SessionManager sessionManager;
     private final RequestTracker requestTracker;
     private final ErrorHandler errorHandler;
-    private final MessageCodec codec;
+    private final ConversationStore conversations;
 
-    public ChatHandler(AIService aiService, SessionManager sessionManager, RequestTracker requestTracker) {
+    /**
+     * @param conversations Per-session conversation contexts, or null to send prompts without history
+     */
+    public ChatHandler(AIService aiService, SessionManager sessionManager, RequestTracker requestTracker,
+                       ConversationStore conversations) {
         this.aiService = aiService;
         this.sessionManager = sessionManager;
         this.requestTracker = requestTracker;
+        this.conversations = conversations;
         this.errorHandler = ErrorHandler.getInstance();
-        this.codec = MessageCodec.getInstance();
     }
 
     @Override
     public void handle(Session session, Message message) {
+        handleAsync(session, message).join();
+    }
+
+    /**
+     * The AI call runs on the AI client's own pool; the session's next
+     * message is handled once the resulting COMMAND has been sent.
+     *
+     * Holding the mailbox for the whole call is intended: prompts become
+     * commands in the order they were typed, and a follow-up prompt's
+     * history already contains the turn before it. Only this agent session
+     * waits; its extension's RESPONSEs go through the extension's mailbox.
+     */
+    @Override
+    public CompletableFuture<Void> handleAsync(Session session, Message message) {
         logger.info("Processing CHAT from session: {}", session.getSessionId());
 
         // Validate payload
@@ -52,7 +74,7 @@ public class ChatHandler implements MessageHandler {
                     "CHAT message must contain 'text' in payload",
                     message.getMessageId()
             );
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         String text = payload.get("text").asText();
@@ -63,7 +85,7 @@ public class ChatHandler implements MessageHandler {
                     "CHAT text cannot be empty",
                     message.getMessageId()
             );
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         // Get paired extension
@@ -75,54 +97,31 @@ public class ChatHandler implements MessageHandler {
                     "No active extension paired with this agent",
                     message.getMessageId()
             );
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         Session extension = pairedExtension.get();
         String requestId = message.getMessageId(); // Use original message ID for correlation
 
-        // Call AI service asynchronously
-        CompletableFuture.supplyAsync(() -> aiService.processNaturalLanguage(text))
-                .thenAccept(aiResult -> {
-                    if (aiResult.has("error")) {
-                        errorHandler.sendError(
-                                session.getChannel(),
-                                ErrorCode.AI_ERROR,
-                                aiResult.get("error").asText(),
-                                requestId
-                        );
-                        return;
-                    }
-
-                    // Extract command from AI result
-                    String command = aiResult.has("command") ?
-                            aiResult.get("command").asText() : "UNKNOWN";
-                    JsonNode params = aiResult.has("params") ?
-                            aiResult.get("params") : null;
-
-                    // Create COMMAND message
-                    Message cmdMessage = MessageFactory.createCommand(requestId, command, params);
-                    cmdMessage.setSessionId(extension.getSessionId());
-
-                    // Track the request for response routing
-                    requestTracker.trackRequest(
-                            requestId,
-                            session.getChannel(),
-                            session.getSessionId(),
-                            MessageType.CHAT
-                    );
-
-                    // Send to extension
-                    extension.getChannel().writeAndFlush(
-                            new TextWebSocketFrame(codec.encode(cmdMessage))
-                    );
+        // Optional context: page domain (cache key) and a cache bypass flag
+        String pageDomain = payload.hasNonNull("domain") ? payload.get("domain").asText() : null;
+        boolean noCache = payload.path("noCache").asBoolean(false);
+        AIRequest aiRequest = new AIRequest(text, pageDomain, noCache, new AIRequest.Listener() {
+            @Override
+            public void onCommandSelected(String command) {
+                sendCommandSelected(session, requestId, command);
+            }
+        });
 
-                    logger.info("COMMAND sent to extension: {} (requestId: {})",
-                            command, requestId);
+        // Earlier turns let follow-ups ("the same for the second form") resolve
+        ConversationContext context = conversations != null ? conversations.get(session.getSessionId()) : null;
+        if (context != null) {
+            aiRequest = aiRequest.withHistory(context.getHistory());
+        }
 
-                    // Optionally notify agent that command was sent
-                    sendCommandSentAck(session, requestId, command);
-                })
+        // Call AI service without holding the mailbox thread
+        return aiService.processAsync(aiRequest)
+                .thenAccept(aiResult -> sendCommand(session, extension, requestId, text, aiResult, context))
                 .exceptionally(ex -> {
                     logger.error("Error processing CHAT message", ex);
                     errorHandler.sendError(
@@ -135,6 +134,122 @@ public class ChatHandler implements MessageHandler {
                 });
     }
 
+    /**
+     * Turn an AI result into a COMMAND for the extension.
+     */
+    private void sendCommand(Session session, Session extension, String requestId, String text,
+                             JsonNode aiResult, ConversationContext context) {
+        if (aiResult.has("error")) {
+            errorHandler.sendError(
+                    session.getChannel(),
+                    ErrorCode.AI_ERROR,
+                    aiResult.get("error").asText(),
+                    requestId
+            );
+            return;
+        }
+
+        // The extension may have gone away while the AI call was in flight
+        if (!extension.isActive()) {
+            errorHandler.sendError(
+                    session.getChannel(),
+                    ErrorCode.NO_EXTENSION_CONNECTED,
+                    "Paired extension disconnected",
+                    requestId
+            );
+            return;
+        }
+
+        // Recorded before sending, so the RESPONSE finds its turn
+        if (context != null) {
+            context.addTurn(requestId, text, aiResult);
+        }
+
+        JsonNode commands = aiResult.path("commands");
+        if (commands.isArray() && commands.size() > 1) {
+            sendCommands(session, extension, requestId, commands, context);
+            return;
+        }
+
+        // Extract command from AI result
+        String command = aiResult.has("command") ?
+                aiResult.get("command").asText() : "UNKNOWN";
+        JsonNode params = aiResult.has("params") ?
+                aiResult.get("params") : null;
+
+        // Create COMMAND message
+        Message cmdMessage = MessageFactory.createCommand(requestId, command, params);
+        cmdMessage.setSessionId(extension.getSessionId());
+
+        // Track the request for response routing
+        requestTracker.trackRequest(
+                requestId,
+                session.getChannel(),
+                session.getSessionId(),
+                MessageType.CHAT
+        );
+
+        // Send to extension (buffered if it is reconnecting)
+        sessionManager.sendToSession(extension, cmdMessage);
+
+        logger.info("COMMAND sent to extension: {} (requestId: {})",
+                command, requestId);
+
+        // Optionally notify agent that command was sent
+        sendCommandSentAck(session, requestId, command);
+    }
+
+    /**
+     * Send several commands to the extension at once, each under its own
+     * sub-request ID. The agent gets one aggregated RESPONSE under the
+     * original requestId once all have answered or timed out.
+     */
+    private void sendCommands(Session session, Session extension, String requestId, JsonNode commands,
+                              ConversationContext context) {
+        List<String> names = new ArrayList<>(commands.size());
+        for (JsonNode entry : commands) {
+            names.add(entry.path("command").asText("UNKNOWN"));
+        }
+
+        // Track before sending so fast responses find their group
+        List<String> subRequestIds = requestTracker.trackGroup(
+                requestId,
+                names,
+                session.getChannel(),
+                session.getSessionId(),
+                payload -> {
+                    if (context != null) {
+                        context.recordResult(requestId, payload);
+                    }
+                    sessionManager.sendToSession(session, MessageFactory.createResponse(requestId, payload));
+                }
+        );
+
+        for (int i = 0; i < names.size(); i++) {
+            Message cmdMessage = MessageFactory.createCommand(subRequestIds.get(i), names.get(i),
+                    commands.get(i).get("params"));
+            cmdMessage.setSessionId(extension.getSessionId());
+            sessionManager.sendToSession(extension, cmdMessage);
+        }
+
+        logger.info("{} COMMANDs sent to extension: {} (requestId: {})", names.size(), names, requestId);
+
+        sendCommandSentAck(session, requestId, String.join(", ", names));
+    }
+
+    /**
+     * Tell the agent which command is coming while its parameters are still
+     * being generated (streaming mode only).
+     */
+    private void sendCommandSelected(Session session, String requestId, String command) {
+        Message statusMsg = MessageFactory.createStatus("command_selected",
+                "Preparing command '" + command + "'");
+        statusMsg.setRequestId(requestId);
+        statusMsg.setSessionId(session.getSessionId());
+
+        sessionManager.sendToSession(session, statusMsg);
+    }
+
     /**
      * Send acknowledgment to agent that command was sent to extension.
      */
@@ -144,6 +259,6 @@ public class ChatHandler implements MessageHandler {
         statusMsg.setRequestId(requestId);
         statusMsg.setSessionId(session.getSessionId());
 
-        session.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(statusMsg)));
+        sessionManager.sendToSession(session, statusMsg);
     }
 }
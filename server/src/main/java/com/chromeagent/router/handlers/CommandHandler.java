@@ -3,12 +3,10 @@ package com.chromeagent.router.handlers;
 import com.chromeagent.error.ErrorCode;
 import com.chromeagent.error.ErrorHandler;
 import com.chromeagent.message.Message;
-import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageType;
 import com.chromeagent.router.RequestTracker;
 import com.chromeagent.session.Session;
 import com.chromeagent.session.SessionManager;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,13 +22,11 @@ public class CommandHandler implements MessageHandler {
     private final SessionManager sessionManager;
     private final RequestTracker requestTracker;
     private final ErrorHandler errorHandler;
-    private final MessageCodec codec;
 
     public CommandHandler(SessionManager sessionManager, RequestTracker requestTracker) {
         this.sessionManager = sessionManager;
         this.requestTracker = requestTracker;
         this.errorHandler = ErrorHandler.getInstance();
-        this.codec = MessageCodec.getInstance();
     }
 
     @Override
@@ -64,9 +60,7 @@ public class CommandHandler implements MessageHandler {
         message.setTarget("extension");
         message.setSessionId(extension.getSessionId());
 
-        extension.getChannel().writeAndFlush(
-                new TextWebSocketFrame(codec.encode(message))
-        );
+        sessionManager.sendToSession(extension, message);
 
         logger.debug("COMMAND forwarded to extension: {} (requestId: {})",
                 extension.getSessionId(), requestId);
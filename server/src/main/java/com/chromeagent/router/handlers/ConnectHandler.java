@@ -4,7 +4,6 @@ import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageFactory;
 import com.chromeagent.session.Session;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,11 +24,11 @@ public class ConnectHandler implements MessageHandler {
         logger.info("Processing CONNECT from {} (session: {})",
                 message.getSource(), session.getSessionId());
 
-        // Send CONNECT_ACK
-        Message ack = MessageFactory.createConnectAck(session.getSessionId());
+        // Send CONNECT_ACK with the token needed to resume this session
+        Message ack = MessageFactory.createConnectAck(session.getSessionId(), session.getResumeToken());
         ack.setTarget(message.getSource());
 
-        session.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(ack)));
+        session.getChannel().writeAndFlush(codec.encodeFrame(session.getChannel(), ack));
 
         logger.debug("CONNECT_ACK sent to session: {}", session.getSessionId());
     }
@@ -4,7 +4,6 @@ import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageFactory;
 import com.chromeagent.session.Session;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,6 +30,6 @@ public class HeartbeatMessageHandler implements MessageHandler {
         Message heartbeat = MessageFactory.createHeartbeat();
         heartbeat.setSessionId(session.getSessionId());
 
-        session.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(heartbeat)));
+        session.getChannel().writeAndFlush(codec.encodeFrame(session.getChannel(), heartbeat));
     }
 }
@@ -3,6 +3,8 @@ package com.chromeagent.router.handlers;
 import com.chromeagent.message.Message;
 import com.chromeagent.session.Session;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for message type handlers.
  */
@@ -14,4 +16,18 @@ public interface MessageHandler {
      * @param message The message to handle
      */
     void handle(Session session, Message message);
+
+    /**
+     * Handle a message, completing when the handler's work is done.
+     * The session's next message is not handled before then. Handlers that
+     * wait on I/O override this to avoid holding a mailbox thread.
+     *
+     * @param session The session that sent the message
+     * @param message The message to handle
+     * @return Future completed when handling is finished
+     */
+    default CompletableFuture<Void> handleAsync(Session session, Message message) {
+        handle(session, message);
+        return CompletableFuture.completedFuture(null);
+    }
 }
@@ -0,0 +1,109 @@
+package com.chromeagent.router.handlers;
+
+import com.chromeagent.error.ErrorCode;
+import com.chromeagent.error.ErrorHandler;
+import com.chromeagent.message.Message;
+import com.chromeagent.router.RequestTracker;
+import com.chromeagent.session.Session;
+import com.chromeagent.session.SessionManager;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Handles RESPONSE_CHUNK messages from extensions.
+ * Keeps the request open while chunks arrive, restarts its timeout on each
+ * chunk and forwards chunks to the agent in chunkIndex order. The request
+ * completes once the chunk marked lastChunk has been delivered.
+ */
+public class ResponseChunkHandler implements MessageHandler {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseChunkHandler.class);
+
+    private final SessionManager sessionManager;
+    private final RequestTracker requestTracker;
+    private final ErrorHandler errorHandler;
+
+    public ResponseChunkHandler(SessionManager sessionManager, RequestTracker requestTracker) {
+        this.sessionManager = sessionManager;
+        this.requestTracker = requestTracker;
+        this.errorHandler = ErrorHandler.getInstance();
+    }
+
+    @Override
+    public void handle(Session session, Message message) {
+        String requestId = message.getRequestId();
+
+        if (requestId == null || requestId.isBlank()) {
+            logger.warn("RESPONSE_CHUNK without requestId from session: {}", session.getSessionId());
+            return;
+        }
+
+        if (message.getChunkIndex() == null || message.getChunkIndex() < 0) {
+            errorHandler.sendError(
+                    session.getChannel(),
+                    ErrorCode.INVALID_MESSAGE,
+                    "RESPONSE_CHUNK must contain a non-negative 'chunkIndex'",
+                    requestId
+            );
+            return;
+        }
+
+        logger.debug("Processing RESPONSE_CHUNK {} for requestId: {} from session: {}",
+                message.getChunkIndex(), requestId, session.getSessionId());
+
+        Optional<RequestTracker.PendingRequest> pending = requestTracker.getPendingRequest(requestId);
+        if (pending.isPresent() && !pending.get().isAnswerableBy(session)) {
+            logger.warn("Ignoring RESPONSE_CHUNK for requestId: {} from session {} not paired with its agent",
+                    requestId, session.getSessionId());
+            return;
+        }
+
+        // Keep the request open and restart its timeout
+        pending = pending.flatMap(p -> requestTracker.extendRequest(requestId));
+        if (pending.isEmpty()) {
+            logger.warn("No pending request found for requestId: {} (may have timed out)", requestId);
+            return;
+        }
+
+        RequestTracker.PendingRequest request = pending.get();
+        List<Message> ready = request.acceptChunk(message);
+        if (ready == null) {
+            errorHandler.sendError(
+                    session.getChannel(),
+                    ErrorCode.INVALID_MESSAGE,
+                    "Too many out-of-order chunks for request",
+                    requestId
+            );
+            return;
+        }
+
+        Optional<Session> agent = sessionManager.getSessionById(request.getSessionId());
+        if (agent.isEmpty()) {
+            logger.warn("Agent session is gone for requestId: {}", requestId);
+        } else {
+            // Buffered for replay if the agent is reconnecting
+            for (Message chunk : ready) {
+                chunk.setTarget("agent");
+                sessionManager.sendToSession(agent.get(), chunk);
+            }
+        }
+
+        if (request.isChunkStreamComplete()) {
+            requestTracker.completeRequest(requestId);
+            logger.info("Chunked RESPONSE completed for requestId: {}", requestId);
+
+            // Chunks of a fanned-out sub-request go to the agent as they come;
+            // the aggregated RESPONSE only records that it streamed
+            if (request.getGroup() != null) {
+                ObjectNode streamed = JsonNodeFactory.instance.objectNode();
+                streamed.put("success", true);
+                streamed.put("streamed", true);
+                requestTracker.completeGroupMember(request, streamed);
+            }
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.chromeagent.router.handlers;
 
+import com.chromeagent.ai.ConversationContext;
+import com.chromeagent.ai.ConversationStore;
 import com.chromeagent.message.Message;
-import com.chromeagent.message.MessageCodec;
 import com.chromeagent.router.RequestTracker;
 import com.chromeagent.session.Session;
-import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import com.chromeagent.session.SessionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,16 +14,24 @@ import java.util.Optional;
 /**
  * Handles RESPONSE messages from extensions.
  * Uses RequestTracker to route responses back to the correct agent.
+ * Responses for an agent inside its retention window are buffered for replay.
+ * Responses to the sub-requests of a fanned-out CHAT are aggregated instead.
  */
 public class ResponseHandler implements MessageHandler {
     private static final Logger logger = LoggerFactory.getLogger(ResponseHandler.class);
 
+    private final SessionManager sessionManager;
     private final RequestTracker requestTracker;
-    private final MessageCodec codec;
+    private final ConversationStore conversations;
 
-    public ResponseHandler(RequestTracker requestTracker) {
+    /**
+     * @param conversations Conversation contexts to record results in, or null
+     */
+    public ResponseHandler(SessionManager sessionManager, RequestTracker requestTracker,
+                           ConversationStore conversations) {
+        this.sessionManager = sessionManager;
         this.requestTracker = requestTracker;
-        this.codec = MessageCodec.getInstance();
+        this.conversations = conversations;
     }
 
     @Override
@@ -38,8 +46,14 @@ public class ResponseHandler implements MessageHandler {
         logger.info("Processing RESPONSE for requestId: {} from session: {}",
                 requestId, session.getSessionId());
 
-        // Look up the original requester
-        Optional<RequestTracker.PendingRequest> pending = requestTracker.completeRequest(requestId);
+        // Look up the original requester; only its paired extension may answer
+        Optional<RequestTracker.PendingRequest> pending = requestTracker.getPendingRequest(requestId);
+        if (pending.isPresent() && !pending.get().isAnswerableBy(session)) {
+            logger.warn("Ignoring RESPONSE for requestId: {} from session {} not paired with its agent",
+                    requestId, session.getSessionId());
+            return;
+        }
+        pending = pending.flatMap(p -> requestTracker.completeRequest(requestId));
 
         if (pending.isEmpty()) {
             logger.warn("No pending request found for requestId: {} (may have timed out)", requestId);
@@ -47,19 +61,53 @@ public class ResponseHandler implements MessageHandler {
         }
 
         RequestTracker.PendingRequest request = pending.get();
-        Channel agentChannel = request.getSourceChannel();
+        recordResult(request, message);
+
+        // Part of a fanned-out request: the agent gets one aggregated RESPONSE
+        if (request.getGroup() != null) {
+            requestTracker.completeGroupMember(request, message.getPayload());
+            return;
+        }
+
+        Optional<Session> agent = sessionManager.getSessionById(request.getSessionId());
 
-        // Verify channel is still active
-        if (agentChannel == null || !agentChannel.isActive()) {
-            logger.warn("Agent channel is no longer active for requestId: {}", requestId);
+        // Verify the agent session still exists
+        if (agent.isEmpty()) {
+            logger.warn("Agent session is gone for requestId: {}", requestId);
             return;
         }
 
-        // Update message target and forward to agent
+        // Update message target and forward to agent (buffered if reconnecting)
         message.setTarget("agent");
 
-        agentChannel.writeAndFlush(new TextWebSocketFrame(codec.encode(message)));
+        if (!sessionManager.sendToSession(agent.get(), message)) {
+            logger.warn("Agent session no longer reachable for requestId: {}", requestId);
+            return;
+        }
 
         logger.info("RESPONSE forwarded to agent for requestId: {}", requestId);
     }
+
+    /**
+     * Remember the result in the agent's conversation so follow-up prompts
+     * can refer to it. Sub-requests are recorded once aggregated.
+     *
+     * A relayed payload is summarized from its first bytes, and only if the
+     * turn is still kept, so large results are neither parsed nor copied.
+     */
+    private void recordResult(RequestTracker.PendingRequest request, Message message) {
+        if (conversations == null || request.getGroup() != null) {
+            return;
+        }
+        ConversationContext context = conversations.find(request.getSessionId());
+        if (context == null || !context.hasTurn(request.getRequestId())) {
+            return;
+        }
+        byte[] prefix = message.getRawPayloadPrefix(ConversationContext.RESULT_PREFIX_BYTES);
+        if (prefix != null) {
+            context.recordRawResult(request.getRequestId(), prefix);
+        } else {
+            context.recordResult(request.getRequestId(), message.getPayload());
+        }
+    }
 }
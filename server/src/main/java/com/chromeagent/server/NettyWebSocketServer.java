@@ -1,20 +1,34 @@
 package com.chromeagent.server;
 
 import com.chromeagent.ai.AIService;
+import com.chromeagent.ai.CachingAIService;
 import com.chromeagent.ai.ClaudeAIService;
+import com.chromeagent.ai.HedgingAIService;
+import com.chromeagent.ai.IntentMatchingAIService;
+import com.chromeagent.ai.ModelRoutingAIService;
 import com.chromeagent.config.ServerConfig;
 import com.chromeagent.router.MessageRouter;
+import com.chromeagent.router.RequestTracker;
+import com.chromeagent.session.ClientType;
+import com.chromeagent.session.SessionState;
 import com.chromeagent.session.SessionManager;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Netty WebSocket server with graceful shutdown support.
@@ -23,8 +37,19 @@ public class NettyWebSocketServer {
     private static final Logger logger = LoggerFactory.getLogger(NettyWebSocketServer.class);
 
     private final ServerConfig config;
+    private final AtomicBoolean shutdownStarted = new AtomicBoolean();
+    private final CountDownLatch shutdownComplete = new CountDownLatch(1);
+    private ServerTransport transport;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    private HashedWheelTimer timer;
+    private ExecutorService mailboxExecutor;
+    private AIService aiService;
+    private ClaudeAIService aiClient;
+    private CachingAIService aiCache;
+    private IntentMatchingAIService aiIntents;
+    private ModelRoutingAIService aiRouting;
+    private HedgingAIService aiHedging;
     private Channel serverChannel;
     private SessionManager sessionManager;
     private MessageRouter router;
@@ -37,14 +62,42 @@ public class NettyWebSocketServer {
      * Start the server and block until shutdown.
      */
     public void start() throws InterruptedException {
-        bossGroup = new NioEventLoopGroup(1);
-        workerGroup = new NioEventLoopGroup();
+        transport = ServerTransport.select(config.getTransportType());
+        bossGroup = transport.newEventLoopGroup(1);
+        workerGroup = transport.newEventLoopGroup(0);
 
         try {
+            // Shared timer for request timeouts and session retention:
+            // O(1) schedule/cancel, one thread for all pending timeouts
+            timer = new HashedWheelTimer(new DefaultThreadFactory("timeout-wheel", true),
+                    config.getTimerTickMillis(), TimeUnit.MILLISECONDS, config.getTimerWheelSize());
+
+            // Handler pool behind the per-session mailboxes
+            mailboxExecutor = Executors.newFixedThreadPool(Math.max(1, config.getMailboxThreads()),
+                    new DefaultThreadFactory("session-mailbox", true));
+
             // Initialize components
-            sessionManager = new SessionManager(config);
-            AIService aiService = new ClaudeAIService(config);
-            router = new MessageRouter(config, sessionManager, aiService);
+            sessionManager = new SessionManager(config, timer, mailboxExecutor);
+            sessionManager.restoreSnapshot();
+            aiClient = new ClaudeAIService(config, timer);
+            aiService = aiClient;
+            if (config.getAiHedgePercentile() > 0) {
+                aiHedging = new HedgingAIService(aiService, config, timer);
+                aiService = aiHedging;
+            }
+            if (!config.getAiFastModel().isBlank()) {
+                aiRouting = new ModelRoutingAIService(aiService, config);
+                aiService = aiRouting;
+            }
+            if (config.getAiCacheMaxEntries() > 0) {
+                aiCache = new CachingAIService(aiService, config);
+                aiService = aiCache;
+            }
+            if (config.isAiIntentFastPath()) {
+                aiIntents = new IntentMatchingAIService(aiService);
+                aiService = aiIntents;
+            }
+            router = new MessageRouter(config, sessionManager, aiService, timer);
 
             // Register shutdown hook
             Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown-hook"));
@@ -52,11 +105,12 @@ public class NettyWebSocketServer {
             // Configure server
             ServerBootstrap bootstrap = new ServerBootstrap()
                     .group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(transport.serverChannelClass())
                     .childHandler(new WebSocketChannelInitializer(config, router, sessionManager))
                     .option(ChannelOption.SO_BACKLOG, 128)
                     .childOption(ChannelOption.SO_KEEPALIVE, true)
                     .childOption(ChannelOption.TCP_NODELAY, true);
+            transport.configure(bootstrap);
 
             // Bind and start
             serverChannel = bootstrap.bind(config.getPort()).sync().channel();
@@ -64,11 +118,14 @@ public class NettyWebSocketServer {
             logger.info("========================================");
             logger.info("Chrome Agent Server started");
             logger.info("Port: {}", config.getPort());
+            logger.info("Transport: {}", transport.getType().getValue());
             logger.info("WebSocket endpoint: ws://localhost:{}/ws", config.getPort());
             logger.info("Heartbeat interval: {}s", config.getHeartbeatIntervalSeconds());
             logger.info("Session retention: {}s", config.getSessionRetentionSeconds());
             logger.info("========================================");
 
+            scheduleGaugeLog();
+
             // Wait for server channel to close
             serverChannel.closeFuture().sync();
 
@@ -78,9 +135,18 @@ public class NettyWebSocketServer {
     }
 
     /**
-     * Gracefully shutdown the server.
+     * Gracefully shutdown the server. Runs once: both the shutdown hook and
+     * start() call this, and a second caller waits for the first to finish.
      */
     public void shutdown() {
+        if (!shutdownStarted.compareAndSet(false, true)) {
+            try {
+                shutdownComplete.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
         logger.info("Initiating graceful shutdown...");
 
         try {
@@ -97,8 +163,10 @@ public class NettyWebSocketServer {
 
                 // 3. Wait a moment for pending requests
                 Thread.sleep(1000);
+                logger.info("Gauges at shutdown: {}", getGauges());
 
-                // 4. Close all sessions
+                // 4. Save sessions for a warm restart, then close them
+                sessionManager.saveSnapshot();
                 sessionManager.closeAllSessions();
                 sessionManager.shutdown();
                 logger.info("Sessions closed");
@@ -110,7 +178,26 @@ public class NettyWebSocketServer {
                 logger.info("Router shutdown");
             }
 
-            // 6. Shutdown event loops
+            // 6. Stop the handler pool, letting running handlers finish,
+            // then the AI client
+            if (mailboxExecutor != null) {
+                mailboxExecutor.shutdown();
+                if (!mailboxExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    mailboxExecutor.shutdownNow();
+                }
+                logger.info("Mailbox executor stopped");
+            }
+            if (aiService != null) {
+                aiService.shutdown();
+            }
+
+            // 7. Stop the timeout wheel
+            if (timer != null) {
+                int unexpired = timer.stop().size();
+                logger.info("Timeout wheel stopped ({} unexpired timeouts dropped)", unexpired);
+            }
+
+            // 8. Shutdown event loops
             if (bossGroup != null) {
                 bossGroup.shutdownGracefully(0, 5, TimeUnit.SECONDS).sync();
             }
@@ -125,7 +212,23 @@ public class NettyWebSocketServer {
             Thread.currentThread().interrupt();
         } catch (Exception e) {
             logger.error("Error during shutdown", e);
+        } finally {
+            shutdownComplete.countDown();
+        }
+    }
+
+    /**
+     * Log the gauges every GAUGE_LOG_INTERVAL_SECONDS on the shared timer.
+     */
+    private void scheduleGaugeLog() {
+        int interval = config.getGaugeLogIntervalSeconds();
+        if (interval <= 0) {
+            return;
         }
+        timer.newTimeout(timeout -> {
+            logger.info("Gauges: {}", getGauges());
+            scheduleGaugeLog();
+        }, interval, TimeUnit.SECONDS);
     }
 
     /**
@@ -135,6 +238,89 @@ public class NettyWebSocketServer {
         return serverChannel != null && serverChannel.isActive();
     }
 
+    /**
+     * Get the active transport, or null if the server has not been started.
+     */
+    public TransportType getTransportType() {
+        return transport != null ? transport.getType() : null;
+    }
+
+    /**
+     * Get the number of timeouts (requests and session retention) currently
+     * waiting on the shared timer.
+     */
+    public long getPendingTimeoutCount() {
+        return timer != null ? timer.pendingTimeouts() : 0;
+    }
+
+    /**
+     * Get a snapshot of the server gauges for monitoring.
+     * Every value is read from a live counter, so this is cheap to poll
+     * regardless of how many sessions or requests are in flight.
+     *
+     * @return Gauge name to value, e.g. "sessions.agent.paired" or "requests.pending"
+     */
+    public Map<String, Long> getGauges() {
+        Map<String, Long> gauges = new LinkedHashMap<>();
+        if (sessionManager != null) {
+            for (ClientType type : ClientType.values()) {
+                for (SessionState state : SessionState.values()) {
+                    if (state != SessionState.TERMINATED) {
+                        gauges.put("sessions." + type.getValue() + "." + state.name().toLowerCase(Locale.ROOT),
+                                (long) sessionManager.getSessionCount(type, state));
+                    }
+                }
+            }
+            gauges.put("pairing.pending_affinity_keys", (long) sessionManager.getPendingAffinityKeyCount());
+        }
+        if (router != null) {
+            RequestTracker tracker = router.getRequestTracker();
+            gauges.put("requests.pending", (long) tracker.getPendingCount());
+            gauges.put("requests.completed", tracker.getCompletedCount());
+            gauges.put("requests.timed_out", tracker.getTimedOutCount());
+            if (router.getConversationStore() != null) {
+                gauges.put("ai.context.sessions", (long) router.getConversationStore().size());
+            }
+        }
+        if (aiService != null) {
+            gauges.put("ai.calls.running", (long) aiService.getRunningCallCount());
+            gauges.put("ai.calls.queued", (long) aiService.getQueuedCallCount());
+        }
+        if (aiCache != null) {
+            gauges.put("ai.cache.hits", aiCache.getHitCount());
+            gauges.put("ai.cache.misses", aiCache.getMissCount());
+            gauges.put("ai.cache.coalesced", aiCache.getCoalescedCount());
+            gauges.put("ai.cache.size", (long) aiCache.size());
+        }
+        if (aiClient != null) {
+            gauges.put("ai.client.rejected", aiClient.getRejectedCount());
+            gauges.put("ai.client.retries", aiClient.getRetryCount());
+            gauges.put("ai.client.retry_budget_exhausted", aiClient.getRetryBudgetExhaustedCount());
+            gauges.put("ai.client.rate_limited", aiClient.getRateLimitedCount());
+            gauges.put("ai.circuit.state", (long) aiClient.getCircuitState());
+            gauges.put("ai.circuit.opened", aiClient.getCircuitOpenCount());
+        }
+        if (aiHedging != null) {
+            gauges.put("ai.hedge.sent", aiHedging.getHedgeCount());
+            gauges.put("ai.hedge.won", aiHedging.getHedgeWinCount());
+            gauges.put("ai.hedge.budget_exhausted", aiHedging.getBudgetExhaustedCount());
+        }
+        if (aiRouting != null) {
+            gauges.put("ai.route.fast.calls", aiRouting.getFastCallCount());
+            gauges.put("ai.route.fast.latency_avg_ms", aiRouting.getFastAverageLatencyMillis());
+            gauges.put("ai.route.fast.escalations", aiRouting.getEscalationCount());
+            gauges.put("ai.route.large.calls", aiRouting.getLargeCallCount());
+            gauges.put("ai.route.large.latency_avg_ms", aiRouting.getLargeAverageLatencyMillis());
+        }
+        if (aiIntents != null) {
+            gauges.put("ai.intent.hits", aiIntents.getHitCount());
+            gauges.put("ai.intent.misses", aiIntents.getMissCount());
+            gauges.put("ai.intent.overrides", aiIntents.getOverrideCount());
+        }
+        gauges.put("timer.pending_timeouts", getPendingTimeoutCount());
+        return gauges;
+    }
+
     /**
      * Get the bound port.
      */
@@ -0,0 +1,112 @@
+package com.chromeagent.server;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringChannelOption;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves the configured transport to a concrete Netty transport.
+ *
+ * Native transports are only used when they can be loaded on this host.
+ * An unavailable transport falls back to the next one in the chain:
+ * io_uring -> epoll -> nio. AUTO starts at epoll, since io_uring is
+ * still an incubator transport and must be requested explicitly.
+ */
+public final class ServerTransport {
+    private static final Logger logger = LoggerFactory.getLogger(ServerTransport.class);
+
+    private final TransportType type;
+
+    private ServerTransport(TransportType type) {
+        this.type = type;
+    }
+
+    /**
+     * Select the transport to use for the requested type.
+     *
+     * @param requested Transport requested by configuration
+     * @return Resolved transport (never AUTO)
+     */
+    public static ServerTransport select(TransportType requested) {
+        TransportType resolved = resolve(requested == null ? TransportType.AUTO : requested);
+        if (requested != null && requested != TransportType.AUTO && requested != resolved) {
+            logger.warn("Transport {} not available, falling back to {}", requested.getValue(), resolved.getValue());
+        }
+        return new ServerTransport(resolved);
+    }
+
+    private static TransportType resolve(TransportType requested) {
+        switch (requested) {
+            case IO_URING:
+                if (IOUring.isAvailable()) {
+                    return TransportType.IO_URING;
+                }
+                // Only requested explicitly, so say why it cannot be used
+                logger.warn("io_uring unavailable on {}/{}: {}", System.getProperty("os.name"),
+                        System.getProperty("os.arch"), IOUring.unavailabilityCause().toString());
+                // fall through
+            case AUTO:
+            case EPOLL:
+                if (Epoll.isAvailable()) {
+                    return TransportType.EPOLL;
+                }
+                logger.debug("epoll unavailable: {}", Epoll.unavailabilityCause().toString());
+                // fall through
+            default:
+                return TransportType.NIO;
+        }
+    }
+
+    /**
+     * Create an event loop group for this transport.
+     *
+     * @param nThreads Number of threads (0 = Netty default)
+     */
+    public EventLoopGroup newEventLoopGroup(int nThreads) {
+        return switch (type) {
+            case IO_URING -> new IOUringEventLoopGroup(nThreads);
+            case EPOLL -> new EpollEventLoopGroup(nThreads);
+            default -> new NioEventLoopGroup(nThreads);
+        };
+    }
+
+    /**
+     * Get the server socket channel class for this transport.
+     */
+    public Class<? extends ServerChannel> serverChannelClass() {
+        return switch (type) {
+            case IO_URING -> IOUringServerSocketChannel.class;
+            case EPOLL -> EpollServerSocketChannel.class;
+            default -> NioServerSocketChannel.class;
+        };
+    }
+
+    /**
+     * Apply transport-specific options to the bootstrap.
+     */
+    public void configure(ServerBootstrap bootstrap) {
+        switch (type) {
+            case IO_URING -> bootstrap.option(IOUringChannelOption.SO_REUSEPORT, true);
+            case EPOLL -> bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+            default -> {
+                // No native options for NIO
+            }
+        }
+    }
+
+    public TransportType getType() {
+        return type;
+    }
+}
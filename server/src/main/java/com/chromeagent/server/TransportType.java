@@ -0,0 +1,34 @@
+package com.chromeagent.server;
+
+/**
+ * Netty transports the server can run on.
+ * AUTO picks the best native transport available on the host.
+ */
+public enum TransportType {
+    AUTO("auto"),
+    NIO("nio"),
+    EPOLL("epoll"),
+    IO_URING("io_uring");
+
+    private final String value;
+
+    TransportType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static TransportType fromValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (TransportType type : values()) {
+            if (type.value.equalsIgnoreCase(value)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
@@ -2,8 +2,11 @@ package com.chromeagent.server;
 
 import com.chromeagent.config.ServerConfig;
 import com.chromeagent.handler.ConnectionHandler;
+import com.chromeagent.handler.FragmentedMessageHandler;
+import com.chromeagent.handler.FragmentedWriteGuard;
 import com.chromeagent.handler.HeartbeatHandler;
 import com.chromeagent.handler.WebSocketFrameHandler;
+import com.chromeagent.message.WireFormat;
 import com.chromeagent.router.MessageRouter;
 import com.chromeagent.session.SessionManager;
 import io.netty.channel.ChannelInitializer;
@@ -59,17 +62,23 @@ public class WebSocketChannelInitializer extends ChannelInitializer<SocketChanne
         // Handles handshake, ping/pong, and close frames automatically
         pipeline.addLast("wsProtocol", new WebSocketServerProtocolHandler(
                 "/ws",           // WebSocket path
-                null,            // Subprotocols (null = any)
+                WireFormat.supportedSubprotocols(), // Subprotocols (wire format negotiation)
                 true,            // Allow extensions
-                65536,           // Max frame size
+                config.getMaxFramePayloadBytes(), // Max frame size
                 false,           // Allow mask mismatch
                 true,            // Check starting slash
                 10000L           // Handshake timeout (10 seconds)
         ));
 
+        // Keeps fragmented messages relayed to this channel contiguous
+        // (must sit before any handler that writes via ctx)
+        pipeline.addLast("fragmentGuard", new FragmentedWriteGuard());
+
         // Custom handlers
         pipeline.addLast("heartbeat", new HeartbeatHandler(sessionManager));
         pipeline.addLast("connection", new ConnectionHandler(sessionManager));
+        pipeline.addLast("fragments", new FragmentedMessageHandler(
+                sessionManager, router.getRequestTracker(), config.getMaxStreamedMessageBytes()));
         pipeline.addLast("websocket", new WebSocketFrameHandler(router, sessionManager));
     }
 }
@@ -0,0 +1,35 @@
+package com.chromeagent.session;
+
+/**
+ * What a session mailbox does with a message when it is full.
+ */
+public enum MailboxOverflowPolicy {
+    /** Refuse the new message; the sender gets an error. */
+    REJECT("reject"),
+    /** Discard the oldest queued message to make room. */
+    DROP_OLDEST("drop_oldest"),
+    /** Stop reading from the channel once the mailbox fills, until it drains; messages already read are refused. */
+    BACK_PRESSURE("back_pressure");
+
+    private final String value;
+
+    MailboxOverflowPolicy(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public static MailboxOverflowPolicy fromValue(String value) {
+        if (value == null) {
+            return null;
+        }
+        for (MailboxOverflowPolicy policy : values()) {
+            if (policy.value.equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,72 @@
+package com.chromeagent.session;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded outbound buffer for a session inside its retention window.
+ * Holds encoded JSON messages in send order, capped by message count and
+ * total bytes. When a cap is exceeded the oldest messages are dropped.
+ *
+ * Not thread-safe by itself: SessionManager guards each buffer with its
+ * monitor so buffering and replay are ordered against live sends.
+ */
+public class ReplayBuffer {
+    private final int maxMessages;
+    private final long maxBytes;
+    private final ArrayDeque<byte[]> messages = new ArrayDeque<>();
+    private long bytes;
+    private int droppedCount;
+
+    public ReplayBuffer(int maxMessages, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Append an encoded message, evicting the oldest ones if over a cap.
+     *
+     * @return false if the message alone exceeds the caps and was dropped
+     */
+    boolean offer(byte[] encoded) {
+        if (maxMessages <= 0 || encoded.length > maxBytes) {
+            droppedCount++;
+            return false;
+        }
+
+        messages.addLast(encoded);
+        bytes += encoded.length;
+        while (messages.size() > maxMessages || bytes > maxBytes) {
+            bytes -= messages.removeFirst().length;
+            droppedCount++;
+        }
+        return true;
+    }
+
+    /**
+     * Remove and return all buffered messages in send order.
+     */
+    List<byte[]> drain() {
+        List<byte[]> drained = new ArrayList<>(messages);
+        clear();
+        return drained;
+    }
+
+    /**
+     * Get the number of messages dropped since the last drain or clear.
+     */
+    int getDroppedCount() {
+        return droppedCount;
+    }
+
+    int size() {
+        return messages.size();
+    }
+
+    void clear() {
+        messages.clear();
+        bytes = 0;
+        droppedCount = 0;
+    }
+}
@@ -1,34 +1,73 @@
 package com.chromeagent.session;
 
 import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.time.Instant;
+import java.util.Base64;
 import java.util.Objects;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Represents a client session (either agent or extension).
  * Thread-safe for concurrent access.
  */
 public class Session {
+    /**
+     * Channel attribute binding a connected channel to its session.
+     */
+    public static final AttributeKey<Session> ATTRIBUTE_KEY = AttributeKey.valueOf("session");
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int RESUME_TOKEN_BYTES = 32;
+
     private final String sessionId;
     private final ClientType clientType;
+    private final String affinityKey;
+    private final String resumeToken;
     private final Instant createdAt;
+    private final SessionStateCounters counters;
+    private final AtomicReference<SessionState> state;
+    private final AtomicBoolean queued = new AtomicBoolean();
+    private final ReplayBuffer replayBuffer;
+    private final SessionMailbox mailbox;
 
     private volatile Channel channel;
     private volatile Instant lastActivityAt;
-    private volatile SessionState state;
     private volatile String pairedSessionId;
-    private volatile ScheduledFuture<?> retentionTask;
+    private volatile Timeout retentionTask;
+    private volatile Instant retentionDeadline;
 
-    public Session(Channel channel, ClientType clientType) {
-        this.sessionId = UUID.randomUUID().toString();
+    public Session(Channel channel, ClientType clientType, String affinityKey,
+                   SessionStateCounters counters, ReplayBuffer replayBuffer, SessionMailbox mailbox) {
+        this(UUID.randomUUID().toString(), newResumeToken(), channel, clientType, affinityKey,
+                counters, replayBuffer, mailbox);
+    }
+
+    /**
+     * Recreate a session under a known ID and resume token (e.g., restored
+     * from a snapshot).
+     */
+    Session(String sessionId, String resumeToken, Channel channel, ClientType clientType, String affinityKey,
+            SessionStateCounters counters, ReplayBuffer replayBuffer, SessionMailbox mailbox) {
+        this.sessionId = sessionId;
+        this.resumeToken = resumeToken != null ? resumeToken : newResumeToken();
         this.channel = channel;
         this.clientType = clientType;
+        this.affinityKey = affinityKey;
         this.createdAt = Instant.now();
         this.lastActivityAt = Instant.now();
-        this.state = SessionState.CONNECTING;
+        this.counters = counters;
+        this.replayBuffer = replayBuffer;
+        this.mailbox = mailbox;
+        this.state = new AtomicReference<>(SessionState.CONNECTING);
+        counters.transition(clientType, null, SessionState.CONNECTING);
     }
 
     public String getSessionId() {
@@ -47,6 +86,51 @@ public class Session {
         return clientType;
     }
 
+    /**
+     * Key restricting pairing to counterparts with the same key
+     * (user, browser profile...). Null for the global pool.
+     * Taken as sent in CONNECT, so it is not a security boundary.
+     */
+    public String getAffinityKey() {
+        return affinityKey;
+    }
+
+    /**
+     * Secret handed to the client in CONNECT_ACK. A later CONNECT must
+     * present it to resume this session.
+     */
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    /**
+     * Check a resume token presented by a client, in constant time.
+     */
+    public boolean matchesResumeToken(String token) {
+        return token != null && MessageDigest.isEqual(
+                resumeToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String newResumeToken() {
+        byte[] bytes = new byte[RESUME_TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Outbound messages held while the session is disconnected.
+     */
+    public ReplayBuffer getReplayBuffer() {
+        return replayBuffer;
+    }
+
+    /**
+     * Serial queue the session's inbound messages are handled on.
+     */
+    public SessionMailbox getMailbox() {
+        return mailbox;
+    }
+
     public Instant getCreatedAt() {
         return createdAt;
     }
@@ -60,11 +144,43 @@ public class Session {
     }
 
     public SessionState getState() {
-        return state;
+        return state.get();
+    }
+
+    public void setState(SessionState newState) {
+        SessionState previous = state.getAndSet(newState);
+        counters.transition(clientType, previous, newState);
+    }
+
+    /**
+     * Atomically move to a new state if the session is in the expected state.
+     *
+     * @return true if the transition happened
+     */
+    public boolean compareAndSetState(SessionState expected, SessionState newState) {
+        if (!state.compareAndSet(expected, newState)) {
+            return false;
+        }
+        counters.transition(clientType, expected, newState);
+        return true;
     }
 
-    public void setState(SessionState state) {
-        this.state = state;
+    /**
+     * Mark the session as waiting in a pending queue.
+     *
+     * @return false if it already is
+     */
+    boolean markQueued() {
+        return queued.compareAndSet(false, true);
+    }
+
+    /**
+     * Mark the session as no longer waiting in a pending queue.
+     *
+     * @return true if it was
+     */
+    boolean clearQueued() {
+        return queued.getAndSet(false);
     }
 
     public String getPairedSessionId() {
@@ -75,35 +191,47 @@ public class Session {
         this.pairedSessionId = pairedSessionId;
     }
 
-    public ScheduledFuture<?> getRetentionTask() {
+    public Timeout getRetentionTask() {
         return retentionTask;
     }
 
-    public void setRetentionTask(ScheduledFuture<?> retentionTask) {
+    public void setRetentionTask(Timeout retentionTask) {
         this.retentionTask = retentionTask;
     }
 
+    /**
+     * When the retention period of a disconnected session ends.
+     */
+    public Instant getRetentionDeadline() {
+        return retentionDeadline;
+    }
+
+    public void setRetentionDeadline(Instant retentionDeadline) {
+        this.retentionDeadline = retentionDeadline;
+    }
+
     /**
      * Check if this session is actively connected.
      */
     public boolean isActive() {
+        SessionState current = state.get();
         return channel != null && channel.isActive() &&
-               (state == SessionState.CONNECTED || state == SessionState.PAIRED);
+               (current == SessionState.CONNECTED || current == SessionState.PAIRED);
     }
 
     /**
      * Check if this session is paired with another.
      */
     public boolean isPaired() {
-        return state == SessionState.PAIRED && pairedSessionId != null;
+        return state.get() == SessionState.PAIRED && pairedSessionId != null;
     }
 
     /**
      * Cancel the retention task if scheduled.
      */
     public void cancelRetentionTask() {
-        if (retentionTask != null && !retentionTask.isDone()) {
-            retentionTask.cancel(false);
+        if (retentionTask != null && !retentionTask.isExpired()) {
+            retentionTask.cancel();
             retentionTask = null;
         }
     }
@@ -126,7 +254,8 @@ public class Session {
         return "Session{" +
                 "sessionId='" + sessionId + '\'' +
                 ", clientType=" + clientType +
-                ", state=" + state +
+                ", affinityKey='" + affinityKey + '\'' +
+                ", state=" + state.get() +
                 ", pairedSessionId='" + pairedSessionId + '\'' +
                 ", active=" + isActive() +
                 '}';
@@ -0,0 +1,168 @@
+package com.chromeagent.session;
+
+import io.netty.channel.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Serial task queue for one session.
+ * Tasks run one at a time in submission order on a shared executor, so a
+ * session's messages are handled in order while different sessions run in
+ * parallel. At most one task per session occupies a pool thread.
+ *
+ * A task may return an incomplete stage (e.g., an AI call in flight): the
+ * next task waits for it, but no pool thread is held meanwhile.
+ *
+ * The queue never holds more than capacity tasks. Under BACK_PRESSURE reads
+ * are paused as soon as the queue fills; messages Netty had already read
+ * at that point are rejected like under REJECT.
+ */
+public class SessionMailbox {
+    private static final Logger logger = LoggerFactory.getLogger(SessionMailbox.class);
+
+    /**
+     * Outcome of a submit.
+     */
+    public enum Result { ACCEPTED, REJECTED, DROPPED_OLDEST }
+
+    private final Executor executor;
+    private final int capacity;
+    private final MailboxOverflowPolicy policy;
+    private final ArrayDeque<Supplier<? extends CompletionStage<?>>> tasks = new ArrayDeque<>();
+
+    private boolean running;
+    private Channel pausedChannel;
+
+    public SessionMailbox(Executor executor, int capacity, MailboxOverflowPolicy policy) {
+        this.executor = executor;
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+    }
+
+    /**
+     * Queue a task behind the session's earlier tasks.
+     *
+     * @param task Task to run; the next task starts once its stage completes
+     * @param source Channel the task's message was read from (paused under BACK_PRESSURE)
+     * @return Whether the task was queued, and whether an older one was dropped for it;
+     *         REJECTED once the queue is full under REJECT or BACK_PRESSURE
+     */
+    public Result submit(Supplier<? extends CompletionStage<?>> task, Channel source) {
+        Result result = Result.ACCEPTED;
+        synchronized (this) {
+            if (tasks.size() >= capacity) {
+                switch (policy) {
+                    case REJECT, BACK_PRESSURE -> {
+                        return Result.REJECTED;
+                    }
+                    case DROP_OLDEST -> {
+                        tasks.pollFirst();
+                        result = Result.DROPPED_OLDEST;
+                    }
+                }
+            }
+            tasks.addLast(task);
+            if (policy == MailboxOverflowPolicy.BACK_PRESSURE && tasks.size() >= capacity) {
+                pause(source);
+            }
+            if (running) {
+                return result;
+            }
+            running = true;
+        }
+        schedule();
+        return result;
+    }
+
+    /**
+     * Check if no task is running or waiting, i.e. everything submitted so
+     * far has been handled.
+     */
+    public synchronized boolean isIdle() {
+        return !running && tasks.isEmpty();
+    }
+
+    /**
+     * Get the number of tasks waiting to run.
+     */
+    public synchronized int size() {
+        return tasks.size();
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // Executor shut down: nothing will run the queued tasks
+            logger.warn("Mailbox executor rejected tasks, discarding {} queued", size());
+            synchronized (this) {
+                tasks.clear();
+                running = false;
+                resume();
+            }
+        }
+    }
+
+    /**
+     * Run one task, then hand the pool thread back and reschedule once it
+     * completes if more are waiting, so a busy session cannot starve the others.
+     */
+    private void drain() {
+        Supplier<? extends CompletionStage<?>> task;
+        synchronized (this) {
+            task = tasks.pollFirst();
+            if (task == null) {
+                running = false;
+                return;
+            }
+        }
+
+        CompletionStage<?> stage = null;
+        try {
+            stage = task.get();
+        } catch (Throwable t) {
+            logger.error("Mailbox task failed", t);
+        }
+
+        if (stage == null) {
+            afterTask();
+        } else {
+            stage.whenComplete((result, error) -> afterTask());
+        }
+    }
+
+    private void afterTask() {
+        synchronized (this) {
+            if (pausedChannel != null && tasks.size() <= capacity / 2) {
+                resume();
+            }
+            if (tasks.isEmpty()) {
+                running = false;
+                return;
+            }
+        }
+        schedule();
+    }
+
+    private void pause(Channel source) {
+        if (source != null && pausedChannel == null) {
+            pausedChannel = source;
+            source.config().setAutoRead(false);
+            logger.debug("Mailbox full, pausing reads on channel: {}", source.id());
+        }
+    }
+
+    private void resume() {
+        if (pausedChannel != null) {
+            pausedChannel.config().setAutoRead(true);
+            logger.debug("Mailbox drained, resuming reads on channel: {}", pausedChannel.id());
+            pausedChannel = null;
+        }
+    }
+}
@@ -4,80 +4,195 @@ import com.chromeagent.config.ServerConfig;
 import com.chromeagent.message.Message;
 import com.chromeagent.message.MessageCodec;
 import com.chromeagent.message.MessageFactory;
+import com.chromeagent.message.WireFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.Channel;
-import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.Queue;
-import java.util.concurrent.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 /**
  * Thread-safe session manager with 1:1 agent-extension pairing.
  * Handles session lifecycle including creation, pairing, disconnection, and retention.
+ *
+ * Sessions are spread over shards by session ID, each with its own registry
+ * and pending queues. Pairing takes no lock: both sessions are claimed with
+ * CONNECTED -> PAIRED state transitions (CAS), agent first.
+ *
+ * A session that connected with an affinity key only pairs with a
+ * counterpart carrying the same key; all sessions of a key wait in the
+ * shard the key hashes to, so matching is a single queue poll. Sessions
+ * without a key wait in one global FIFO queue per client type.
+ *
+ * A session is queued at most once. It leaves its queue when polled, when
+ * it pairs, and when it disconnects or expires, so queues only hold
+ * sessions that could still pair.
+ *
+ * The affinity key is whatever the client sent in CONNECT; it is not
+ * authenticated. It groups clients that cooperate (one user's agent and
+ * browser) and must not be relied on to keep tenants apart: any client
+ * that knows or guesses a key can pair within it.
  */
 public class SessionManager {
     private static final Logger logger = LoggerFactory.getLogger(SessionManager.class);
 
-    private final ConcurrentHashMap<String, Session> sessionsById = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Session> sessionsByChannelId = new ConcurrentHashMap<>();
-
-    // Pending sessions waiting for pairing (FIFO)
+    private final SessionShard[] shards;
     private final Queue<Session> pendingAgents = new ConcurrentLinkedQueue<>();
     private final Queue<Session> pendingExtensions = new ConcurrentLinkedQueue<>();
-
-    private final ScheduledExecutorService scheduler;
+    private final Timer timer;
+    private final Executor mailboxExecutor;
+    private final SessionStateCounters stateCounters = new SessionStateCounters();
     private final ServerConfig config;
     private final MessageCodec codec;
+    private final List<Consumer<Session>> removalListeners = new CopyOnWriteArrayList<>();
 
-    public SessionManager(ServerConfig config) {
+    public SessionManager(ServerConfig config, Timer timer, Executor mailboxExecutor) {
         this.config = config;
-        this.scheduler = Executors.newScheduledThreadPool(2);
+        this.timer = timer;
+        this.mailboxExecutor = mailboxExecutor;
         this.codec = MessageCodec.getInstance();
-        logger.info("SessionManager initialized with retention={}s", config.getSessionRetentionSeconds());
+
+        this.shards = new SessionShard[Math.max(1, config.getSessionShards())];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new SessionShard();
+        }
+        logger.info("SessionManager initialized with retention={}s, shards={}",
+                config.getSessionRetentionSeconds(), shards.length);
+    }
+
+    /**
+     * Register a callback run when a session is removed (retention expired),
+     * to free per-session state kept elsewhere.
+     */
+    public void addRemovalListener(Consumer<Session> listener) {
+        removalListeners.add(listener);
     }
 
     /**
      * Create a new session for a connected channel.
+     *
+     * @param affinityKey Pairing key from CONNECT, or null for the global pool
      */
-    public Session createSession(Channel channel, ClientType clientType) {
-        Session session = new Session(channel, clientType);
+    public Session createSession(Channel channel, ClientType clientType, String affinityKey) {
+        Session session = new Session(channel, clientType, affinityKey, stateCounters,
+                newReplayBuffer(), newMailbox());
         session.setState(SessionState.CONNECTED);
 
-        sessionsById.put(session.getSessionId(), session);
-        sessionsByChannelId.put(channel.id().asLongText(), session);
-
-        logger.info("Session created: {} ({})", session.getSessionId(), clientType);
+        shardFor(session.getSessionId()).add(session);
+        channel.attr(Session.ATTRIBUTE_KEY).set(session);
 
-        // Add to pending queue for pairing
-        if (clientType == ClientType.AGENT) {
-            pendingAgents.offer(session);
+        if (affinityKey != null) {
+            logger.info("Session created: {} ({}, affinityKey={})", session.getSessionId(), clientType, affinityKey);
         } else {
-            pendingExtensions.offer(session);
+            logger.info("Session created: {} ({})", session.getSessionId(), clientType);
         }
 
-        // Try to pair immediately
-        tryPair();
+        // Queue for pairing and try to pair immediately
+        enqueueForPairing(session);
+
+        return session;
+    }
+
+    private ReplayBuffer newReplayBuffer() {
+        return new ReplayBuffer(config.getReplayBufferMaxMessages(), config.getReplayBufferMaxBytes());
+    }
+
+    private SessionMailbox newMailbox() {
+        return new SessionMailbox(mailboxExecutor, config.getMailboxCapacity(), config.getMailboxOverflowPolicy());
+    }
+
+    private SessionShard shardFor(String id) {
+        return shards[Math.floorMod(id.hashCode(), shards.length)];
+    }
+
+    /**
+     * Queue a session to wait for a counterpart: in its affinity key's
+     * shard, or in the global keyless queue. No-op if already queued.
+     */
+    private void offerPending(Session session) {
+        if (!session.markQueued()) {
+            return;
+        }
+        String key = session.getAffinityKey();
+        if (key == null) {
+            keyless(session.getClientType()).offer(session);
+        } else {
+            shardFor(key).offerPending(session);
+        }
+    }
 
+    /**
+     * Take the oldest session of a type waiting under an affinity key, or
+     * in the keyless queue if the key is null.
+     */
+    private Session pollPending(ClientType type, String key) {
+        Session session = key == null ? keyless(type).poll() : shardFor(key).pollPending(type, key);
+        if (session != null) {
+            session.clearQueued();
+        }
         return session;
     }
 
+    /**
+     * Take a session out of its pending queue, if it is in one.
+     */
+    private void removePending(Session session) {
+        if (!session.clearQueued()) {
+            return;
+        }
+        String key = session.getAffinityKey();
+        if (key == null) {
+            keyless(session.getClientType()).remove(session);
+        } else {
+            shardFor(key).removePending(session);
+        }
+    }
+
+    /**
+     * Get the number of sessions of a type in the keyless queue. O(n).
+     */
+    int getKeylessPendingCount(ClientType type) {
+        return keyless(type).size();
+    }
+
+    private Queue<Session> keyless(ClientType type) {
+        return type == ClientType.AGENT ? pendingAgents : pendingExtensions;
+    }
+
     /**
      * Get session by session ID.
      */
     public Optional<Session> getSessionById(String sessionId) {
-        return Optional.ofNullable(sessionsById.get(sessionId));
+        if (sessionId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(shardFor(sessionId).get(sessionId));
     }
 
     /**
-     * Get session by channel.
+     * Get session by channel (read from the channel attribute, no map lookup).
      */
     public Optional<Session> getSessionByChannel(Channel channel) {
         if (channel == null) {
             return Optional.empty();
         }
-        return Optional.ofNullable(sessionsByChannelId.get(channel.id().asLongText()));
+        return Optional.ofNullable(channel.attr(Session.ATTRIBUTE_KEY).get());
     }
 
     /**
@@ -98,43 +213,79 @@ public class SessionManager {
     }
 
     /**
-     * Try to pair pending agents with pending extensions (FIFO).
+     * Queue a CONNECTED session for pairing, then look for a counterpart.
+     * Queueing before searching means that of two sessions arriving at the
+     * same time, the later one always sees the earlier one.
      */
-    private synchronized void tryPair() {
-        while (!pendingAgents.isEmpty() && !pendingExtensions.isEmpty()) {
-            Session agent = pendingAgents.poll();
-            Session extension = pendingExtensions.poll();
+    private void enqueueForPairing(Session session) {
+        offerPending(session);
+        tryPair(session);
+    }
 
-            if (agent == null || extension == null) {
-                break;
+    /**
+     * Try to pair a waiting session with a waiting counterpart from its
+     * queue (its affinity key's, or the keyless one), FIFO. Lock-free.
+     */
+    private void tryPair(Session session) {
+        ClientType wanted = session.getClientType() == ClientType.AGENT
+                ? ClientType.EXTENSION : ClientType.AGENT;
+        String key = session.getAffinityKey();
+
+        Session candidate;
+        while ((candidate = pollPending(wanted, key)) != null) {
+            if (session.getState() != SessionState.CONNECTED) {
+                // Paired by someone else (or gone) meanwhile: hand the candidate back
+                requeueIfWaiting(candidate);
+                return;
             }
 
-            // Verify both are still active
-            if (!agent.isActive()) {
-                logger.debug("Skipping inactive agent: {}", agent.getSessionId());
+            // Verify the candidate is still waiting and reachable
+            if (candidate.getState() != SessionState.CONNECTED || !candidate.isActive()) {
+                logger.debug("Skipping stale pending session: {}", candidate.getSessionId());
                 continue;
             }
-            if (!extension.isActive()) {
-                logger.debug("Skipping inactive extension: {}", extension.getSessionId());
-                // Put agent back if extension was bad
-                pendingAgents.offer(agent);
-                continue;
+
+            boolean paired = session.getClientType() == ClientType.AGENT
+                    ? pairSessions(session, candidate)
+                    : pairSessions(candidate, session);
+            if (paired) {
+                removePending(session);
+                return;
             }
+            requeueIfWaiting(candidate);
+            if (session.getState() != SessionState.CONNECTED) {
+                return;
+            }
+        }
+    }
 
-            // Pair them
-            pairSessions(agent, extension);
+    private void requeueIfWaiting(Session session) {
+        if (session.getState() == SessionState.CONNECTED && session.isActive()) {
+            offerPending(session);
         }
     }
 
     /**
-     * Pair two sessions together.
+     * Pair two sessions together by claiming both with a CAS, agent first.
+     * The fixed order keeps two threads racing for the same pair from both
+     * backing off.
+     *
+     * @return true if both sessions were claimed and paired
      */
-    private void pairSessions(Session agent, Session extension) {
-        agent.setPairedSessionId(extension.getSessionId());
-        agent.setState(SessionState.PAIRED);
+    private boolean pairSessions(Session agent, Session extension) {
+        if (!agent.compareAndSetState(SessionState.CONNECTED, SessionState.PAIRED)) {
+            return false;
+        }
+        if (!extension.compareAndSetState(SessionState.CONNECTED, SessionState.PAIRED)) {
+            // Release the agent; its queue entry may have been dropped meanwhile
+            if (agent.compareAndSetState(SessionState.PAIRED, SessionState.CONNECTED)) {
+                requeueIfWaiting(agent);
+            }
+            return false;
+        }
 
+        agent.setPairedSessionId(extension.getSessionId());
         extension.setPairedSessionId(agent.getSessionId());
-        extension.setState(SessionState.PAIRED);
 
         logger.info("Sessions paired: Agent {} <-> Extension {}",
                 agent.getSessionId(), extension.getSessionId());
@@ -142,6 +293,124 @@ public class SessionManager {
         // Notify both clients
         notifyPairing(agent, extension);
         notifyPairing(extension, agent);
+        return true;
+    }
+
+    /**
+     * Send a message to a session. While the session is disconnected but
+     * still within its retention window, the message is held in the
+     * session's replay buffer and delivered on reconnect. A write that fails
+     * because the channel closed meanwhile is buffered the same way.
+     *
+     * @return true if the message was written or buffered
+     */
+    public boolean sendToSession(Session session, Message message) {
+        ReplayBuffer buffer = session.getReplayBuffer();
+        synchronized (buffer) {
+            Channel channel = session.getChannel();
+            if (channel != null && channel.isActive()) {
+                // Keep the content until the write completes, to buffer it if it
+                // fails. A duplicate, as the encoders consume the frame's own
+                // reader index before a closed channel fails the write.
+                WebSocketFrame frame = codec.encodeFrame(channel, message);
+                ByteBuf content = frame.content().retainedDuplicate();
+                channel.writeAndFlush(frame).addListener(future -> {
+                    try {
+                        if (!future.isSuccess()) {
+                            redeliver(session, channel, content);
+                        }
+                    } finally {
+                        content.release();
+                    }
+                });
+                return true;
+            }
+            if (session.getState() == SessionState.TERMINATED) {
+                return false;
+            }
+            if (!buffer.offer(codec.encodeBytes(message))) {
+                logger.warn("Message {} too large to buffer for disconnected session: {}",
+                        message.getMessageId(), session.getSessionId());
+                return false;
+            }
+            logger.debug("Buffered {} for disconnected session: {} ({} queued)",
+                    message.getType(), session.getSessionId(), buffer.size());
+            return true;
+        }
+    }
+
+    /**
+     * Deliver a message whose write failed: to the session's new channel if
+     * it has already reconnected, else into its replay buffer.
+     *
+     * @param content The encoded message as it was before the write
+     */
+    private void redeliver(Session session, Channel failedChannel, ByteBuf content) {
+        byte[] json = WireFormat.of(failedChannel) == WireFormat.JSON
+                ? ByteBufUtil.getBytes(content)
+                : codec.decode(content, WireFormat.SMILE).map(codec::encodeBytes).orElse(null);
+        if (json == null) {
+            return;
+        }
+
+        ReplayBuffer buffer = session.getReplayBuffer();
+        synchronized (buffer) {
+            Channel channel = session.getChannel();
+            if (channel != null && channel != failedChannel && channel.isActive()) {
+                channel.writeAndFlush(codec.encodeFrame(channel, json));
+            } else if (session.getState() != SessionState.TERMINATED && buffer.offer(json)) {
+                logger.debug("Buffered failed write for session: {} ({} queued)",
+                        session.getSessionId(), buffer.size());
+            }
+        }
+    }
+
+    /**
+     * Write a frame straight to a session's channel, only if the session is
+     * live (not disconnected or resuming). Used to open a relayed message
+     * that cannot go through the replay buffer; ordered against sendToSession.
+     *
+     * @return true if written; false if not live (the frame is released)
+     */
+    public boolean writeIfLive(Session session, WebSocketFrame frame) {
+        synchronized (session.getReplayBuffer()) {
+            if (session.isActive() && session.getReplayBuffer().size() == 0) {
+                session.getChannel().writeAndFlush(frame);
+                return true;
+            }
+        }
+        ReferenceCountUtil.release(frame);
+        return false;
+    }
+
+    /**
+     * Attach a new channel to a session and flush its replay buffer, in
+     * order, before any later send can reach the channel.
+     */
+    private void attachChannel(Session session, Channel channel) {
+        ReplayBuffer buffer = session.getReplayBuffer();
+        synchronized (buffer) {
+            session.setChannel(channel);
+
+            int dropped = buffer.getDroppedCount();
+            if (dropped > 0) {
+                Message statusMsg = MessageFactory.createStatus("replay_truncated",
+                        dropped + " message(s) sent while disconnected were dropped");
+                statusMsg.setSessionId(session.getSessionId());
+                channel.write(codec.encodeFrame(channel, statusMsg));
+            }
+
+            List<byte[]> replay = buffer.drain();
+            for (byte[] encoded : replay) {
+                channel.write(codec.encodeFrame(channel, encoded));
+            }
+            channel.flush();
+
+            if (!replay.isEmpty() || dropped > 0) {
+                logger.info("Replayed {} buffered message(s) to session: {} ({} dropped)",
+                        replay.size(), session.getSessionId(), dropped);
+            }
+        }
     }
 
     /**
@@ -151,7 +420,7 @@ public class SessionManager {
         if (session.getChannel() != null && session.getChannel().isActive()) {
             Message statusMsg = MessageFactory.createPairingComplete(pairedWith.getSessionId());
             statusMsg.setSessionId(session.getSessionId());
-            session.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(statusMsg)));
+            session.getChannel().writeAndFlush(codec.encodeFrame(session.getChannel(), statusMsg));
         }
     }
 
@@ -159,20 +428,27 @@ public class SessionManager {
      * Handle a channel disconnect. Starts the retention period.
      */
     public void handleDisconnect(Channel channel) {
-        Session session = sessionsByChannelId.remove(channel.id().asLongText());
+        Session session = channel.attr(Session.ATTRIBUTE_KEY).getAndSet(null);
         if (session == null) {
             return;
         }
 
+        // CAS like pairing does, so a concurrent pairing either claims the
+        // session before this (and it disconnects as PAIRED) or fails on it
+        SessionState previous;
+        do {
+            previous = session.getState();
+            if (previous != SessionState.CONNECTED && previous != SessionState.PAIRED) {
+                logger.debug("Session {} already {} at disconnect", session.getSessionId(), previous);
+                return;
+            }
+        } while (!session.compareAndSetState(previous, SessionState.DISCONNECTED));
+        session.setChannel(null);
+
         logger.info("Session disconnected: {} (starting {}s retention)",
                 session.getSessionId(), config.getSessionRetentionSeconds());
 
-        session.setChannel(null);
-        session.setState(SessionState.DISCONNECTED);
-
-        // Remove from pending queues if present
-        pendingAgents.remove(session);
-        pendingExtensions.remove(session);
+        removePending(session);
 
         // Notify paired session
         getPairedSession(session).ifPresent(paired -> {
@@ -180,16 +456,22 @@ public class SessionManager {
                 Message statusMsg = MessageFactory.createStatus("peer_disconnected",
                         "Paired session temporarily disconnected");
                 statusMsg.setSessionId(paired.getSessionId());
-                paired.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(statusMsg)));
+                paired.getChannel().writeAndFlush(codec.encodeFrame(paired.getChannel(), statusMsg));
             }
         });
 
         // Schedule removal after retention period
-        ScheduledFuture<?> retentionTask = scheduler.schedule(() -> {
-            if (session.getState() == SessionState.DISCONNECTED) {
+        scheduleRetention(session, TimeUnit.SECONDS.toMillis(config.getSessionRetentionSeconds()));
+    }
+
+    private void scheduleRetention(Session session, long delayMillis) {
+        session.setRetentionDeadline(Instant.now().plusMillis(delayMillis));
+        Timeout retentionTask = timer.newTimeout(timeout -> {
+            // CAS so a reconnect racing with expiry either wins or fails cleanly
+            if (session.compareAndSetState(SessionState.DISCONNECTED, SessionState.TERMINATED)) {
                 removeSession(session);
             }
-        }, config.getSessionRetentionSeconds(), TimeUnit.SECONDS);
+        }, delayMillis, TimeUnit.MILLISECONDS);
 
         session.setRetentionTask(retentionTask);
     }
@@ -198,7 +480,7 @@ public class SessionManager {
      * Handle session reconnection.
      */
     public boolean handleReconnect(Channel channel, String sessionId) {
-        Session session = sessionsById.get(sessionId);
+        Session session = getSessionById(sessionId).orElse(null);
         if (session == null) {
             logger.warn("Reconnect failed - session not found: {}", sessionId);
             return false;
@@ -213,20 +495,29 @@ public class SessionManager {
         // Cancel retention timer
         session.cancelRetentionTask();
 
-        // Restore session
-        session.setChannel(channel);
-        session.setState(session.getPairedSessionId() != null ? SessionState.PAIRED : SessionState.CONNECTED);
-        sessionsByChannelId.put(channel.id().asLongText(), session);
+        // Restore session; sends until the channel is attached keep buffering
+        boolean wasPaired = session.getPairedSessionId() != null;
+        if (!session.compareAndSetState(SessionState.DISCONNECTED,
+                wasPaired ? SessionState.PAIRED : SessionState.CONNECTED)) {
+            logger.warn("Reconnect failed - session expired meanwhile: {}", sessionId);
+            return false;
+        }
+        channel.attr(Session.ATTRIBUTE_KEY).set(session);
+        attachChannel(session, channel);
 
         logger.info("Session reconnected: {}", sessionId);
 
+        if (!wasPaired) {
+            enqueueForPairing(session);
+        }
+
         // Notify paired session
         getPairedSession(session).ifPresent(paired -> {
             if (paired.isActive()) {
                 Message statusMsg = MessageFactory.createStatus("peer_reconnected",
                         "Paired session reconnected");
                 statusMsg.setSessionId(paired.getSessionId());
-                paired.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(statusMsg)));
+                paired.getChannel().writeAndFlush(codec.encodeFrame(paired.getChannel(), statusMsg));
             }
         });
 
@@ -237,41 +528,51 @@ public class SessionManager {
      * Remove a session completely (after retention expires or on shutdown).
      */
     private void removeSession(Session session) {
-        sessionsById.remove(session.getSessionId());
+        shardFor(session.getSessionId()).remove(session);
+        removePending(session);
 
         if (session.getChannel() != null) {
-            sessionsByChannelId.remove(session.getChannel().id().asLongText());
+            session.getChannel().attr(Session.ATTRIBUTE_KEY).compareAndSet(session, null);
         }
 
         // Unpair if paired
         if (session.getPairedSessionId() != null) {
-            Session paired = sessionsById.get(session.getPairedSessionId());
+            Session paired = getSessionById(session.getPairedSessionId()).orElse(null);
             if (paired != null) {
                 paired.setPairedSessionId(null);
-                paired.setState(SessionState.CONNECTED);
-
-                // Add back to pending queue for re-pairing
-                if (paired.isActive()) {
-                    if (paired.getClientType() == ClientType.AGENT) {
-                        pendingAgents.offer(paired);
-                    } else {
-                        pendingExtensions.offer(paired);
-                    }
-                    // Try to pair with any waiting session
-                    tryPair();
-                }
+
+                // A peer still in its own retention window stays DISCONNECTED
+                boolean released = paired.compareAndSetState(SessionState.PAIRED, SessionState.CONNECTED);
 
                 // Notify about unpair
-                if (paired.isActive()) {
+                if (released && paired.isActive()) {
                     Message statusMsg = MessageFactory.createStatus("unpaired",
                             "Paired session expired");
                     statusMsg.setSessionId(paired.getSessionId());
-                    paired.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(statusMsg)));
+                    paired.getChannel().writeAndFlush(codec.encodeFrame(paired.getChannel(), statusMsg));
+
+                    // Add back to pending queue for re-pairing
+                    enqueueForPairing(paired);
                 }
             }
         }
 
         session.setState(SessionState.TERMINATED);
+        synchronized (session.getReplayBuffer()) {
+            int buffered = session.getReplayBuffer().size();
+            if (buffered > 0) {
+                logger.warn("Discarding {} buffered message(s) of expired session: {}",
+                        buffered, session.getSessionId());
+            }
+            session.getReplayBuffer().clear();
+        }
+        for (Consumer<Session> listener : removalListeners) {
+            try {
+                listener.accept(session);
+            } catch (RuntimeException e) {
+                logger.error("Session removal listener failed for session: {}", session.getSessionId(), e);
+            }
+        }
         logger.info("Session removed: {}", session.getSessionId());
     }
 
@@ -283,12 +584,38 @@ public class SessionManager {
     }
 
     /**
-     * Get count of active sessions by type.
+     * Get count of active sessions by type: connected or paired, with a
+     * channel that is still open. Walks every shard; for an O(1) count by
+     * state alone use getSessionCount.
      */
     public int getActiveSessionCount(ClientType type) {
-        return (int) sessionsById.values().stream()
-                .filter(s -> s.getClientType() == type && s.isActive())
-                .count();
+        int count = 0;
+        for (SessionShard shard : shards) {
+            for (Session session : shard.sessions()) {
+                if (session.getClientType() == type && session.isActive()) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get count of sessions by type and state. O(1).
+     */
+    public int getSessionCount(ClientType type, SessionState state) {
+        return stateCounters.get(type, state);
+    }
+
+    /**
+     * Get the number of affinity keys that currently have sessions waiting.
+     */
+    public int getPendingAffinityKeyCount() {
+        int count = 0;
+        for (SessionShard shard : shards) {
+            count += shard.getPendingKeyCount();
+        }
+        return count;
     }
 
     /**
@@ -298,43 +625,145 @@ public class SessionManager {
         Message shutdownMsg = MessageFactory.createStatus("server_shutdown",
                 "Server is shutting down");
 
-        sessionsById.values().forEach(session -> {
-            if (session.isActive()) {
-                shutdownMsg.setSessionId(session.getSessionId());
-                session.getChannel().writeAndFlush(new TextWebSocketFrame(codec.encode(shutdownMsg)));
-            }
-        });
+        for (SessionShard shard : shards) {
+            shard.sessions().forEach(session -> {
+                if (session.isActive()) {
+                    shutdownMsg.setSessionId(session.getSessionId());
+                    session.getChannel().writeAndFlush(codec.encodeFrame(session.getChannel(), shutdownMsg));
+                }
+            });
+        }
     }
 
     /**
-     * Close all sessions.
+     * Close all sessions. Each is moved to TERMINATED, so the state counters
+     * read zero afterwards, and detached from its channel first so the
+     * disconnect that follows the close does not start a retention period.
      */
     public void closeAllSessions() {
-        sessionsById.values().forEach(session -> {
-            session.cancelRetentionTask();
-            if (session.getChannel() != null && session.getChannel().isActive()) {
-                session.getChannel().close();
-            }
-        });
-
-        sessionsById.clear();
-        sessionsByChannelId.clear();
         pendingAgents.clear();
         pendingExtensions.clear();
+        for (SessionShard shard : shards) {
+            shard.sessions().forEach(session -> {
+                session.cancelRetentionTask();
+                Channel channel = session.getChannel();
+                if (channel != null) {
+                    channel.attr(Session.ATTRIBUTE_KEY).compareAndSet(session, null);
+                }
+                session.setState(SessionState.TERMINATED);
+                if (channel != null && channel.isActive()) {
+                    channel.close();
+                }
+            });
+            shard.clear();
+        }
     }
 
     /**
-     * Shutdown the session manager.
+     * Save session metadata to the snapshot file, if one is configured.
+     * Connected sessions are saved as disconnected with a full retention
+     * period, so their clients can resume after the restart.
+     * Must run before closeAllSessions().
      */
-    public void shutdown() {
-        scheduler.shutdown();
+    public void saveSnapshot() {
+        if (config.getSessionSnapshotPath().isBlank()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long retentionMillis = TimeUnit.SECONDS.toMillis(config.getSessionRetentionSeconds());
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setTakenAtMillis(now);
+
+        for (SessionShard shard : shards) {
+            for (Session session : shard.sessions()) {
+                SessionState state = session.getState();
+                if (state == SessionState.TERMINATED || state == SessionState.CONNECTING) {
+                    continue;
+                }
+                Instant deadline = session.getRetentionDeadline();
+                SessionSnapshot.Entry entry = new SessionSnapshot.Entry();
+                entry.setSessionId(session.getSessionId());
+                entry.setResumeToken(session.getResumeToken());
+                entry.setClientType(session.getClientType());
+                entry.setAffinityKey(session.getAffinityKey());
+                entry.setPairedSessionId(session.getPairedSessionId());
+                entry.setRetentionDeadlineMillis(state == SessionState.DISCONNECTED && deadline != null
+                        ? deadline.toEpochMilli() : now + retentionMillis);
+                snapshot.getSessions().add(entry);
+            }
+        }
+
+        // Nothing to save (e.g., second shutdown call after sessions were closed)
+        if (snapshot.getSessions().isEmpty()) {
+            return;
+        }
+
+        Path path = Path.of(config.getSessionSnapshotPath());
         try {
-            if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                scheduler.shutdownNow();
+            SessionSnapshot.write(path, snapshot);
+            logger.info("Session snapshot saved: {} session(s) to {}", snapshot.getSessions().size(), path);
+        } catch (IOException e) {
+            logger.error("Failed to save session snapshot to {}", path, e);
+        }
+    }
+
+    /**
+     * Restore sessions from the snapshot file, if one exists. Restored
+     * sessions start DISCONNECTED with their remaining retention period
+     * and keep their pairing, so clients resume with their old session IDs.
+     */
+    public void restoreSnapshot() {
+        if (config.getSessionSnapshotPath().isBlank()) {
+            return;
+        }
+
+        Path path = Path.of(config.getSessionSnapshotPath());
+        SessionSnapshot snapshot = SessionSnapshot.readAndDelete(path);
+        if (snapshot == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        int restored = 0;
+        for (SessionSnapshot.Entry entry : snapshot.getSessions()) {
+            long remaining = entry.getRetentionDeadlineMillis() - now;
+            if (entry.getSessionId() == null || entry.getClientType() == null || remaining <= 0
+                    || getSessionById(entry.getSessionId()).isPresent()) {
+                continue;
             }
-        } catch (InterruptedException e) {
-            scheduler.shutdownNow();
-            Thread.currentThread().interrupt();
+
+            Session session = new Session(entry.getSessionId(), entry.getResumeToken(), null,
+                    entry.getClientType(), entry.getAffinityKey(), stateCounters, newReplayBuffer(), newMailbox());
+            session.setPairedSessionId(entry.getPairedSessionId());
+            session.setState(SessionState.DISCONNECTED);
+            shardFor(session.getSessionId()).add(session);
+            scheduleRetention(session, remaining);
+            restored++;
+        }
+
+        // Drop pairings whose counterpart did not survive the restart
+        for (SessionShard shard : shards) {
+            for (Session session : shard.sessions()) {
+                String pairedId = session.getPairedSessionId();
+                if (pairedId != null && getSessionById(pairedId).isEmpty()) {
+                    session.setPairedSessionId(null);
+                }
+            }
+        }
+
+        logger.info("Session snapshot restored: {} of {} session(s) from {}",
+                restored, snapshot.getSessions().size(), path);
+    }
+
+    /**
+     * Shutdown the session manager.
+     * Retention timeouts still pending are cancelled; the shared timer
+     * itself is owned and stopped by the server.
+     */
+    public void shutdown() {
+        for (SessionShard shard : shards) {
+            shard.sessions().forEach(Session::cancelRetentionTask);
         }
     }
 }
@@ -0,0 +1,98 @@
+package com.chromeagent.session;
+
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One partition of the session registry.
+ * Holds the sessions whose ID hashes to this shard and the queues of
+ * sessions waiting for a counterpart under an affinity key hashing to this
+ * shard, one queue per key and client type. Keyless sessions wait in
+ * SessionManager's global queues.
+ *
+ * SessionManager takes a session out of its key's queue when it pairs,
+ * disconnects or expires, and a key is dropped as soon as its queue
+ * empties, so only keys with sessions still waiting take up memory.
+ */
+class SessionShard {
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Queue<Session>> keyedAgents = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Queue<Session>> keyedExtensions = new ConcurrentHashMap<>();
+
+    void add(Session session) {
+        sessions.put(session.getSessionId(), session);
+    }
+
+    Session get(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    void remove(Session session) {
+        sessions.remove(session.getSessionId(), session);
+    }
+
+    Collection<Session> sessions() {
+        return sessions.values();
+    }
+
+    /**
+     * Queue a session to wait for a counterpart under its affinity key.
+     */
+    void offerPending(Session session) {
+        String key = session.getAffinityKey();
+        // Offer inside compute so it cannot race with pollPending dropping an emptied queue
+        keyed(session.getClientType()).compute(key, (k, queue) -> {
+            Queue<Session> target = queue != null ? queue : new ConcurrentLinkedQueue<>();
+            target.offer(session);
+            return target;
+        });
+    }
+
+    /**
+     * Take the oldest session of a type waiting under an affinity key.
+     *
+     * @return Session, or null if none is waiting
+     */
+    Session pollPending(ClientType type, String affinityKey) {
+        ConcurrentHashMap<String, Queue<Session>> index = keyed(type);
+        Queue<Session> queue = index.get(affinityKey);
+        if (queue == null) {
+            return null;
+        }
+        Session session = queue.poll();
+        if (queue.isEmpty()) {
+            index.computeIfPresent(affinityKey, (k, q) -> q.isEmpty() ? null : q);
+        }
+        return session;
+    }
+
+    /**
+     * Take a session out of its affinity key's queue, dropping the key if
+     * no other session waits under it.
+     */
+    void removePending(Session session) {
+        keyed(session.getClientType()).computeIfPresent(session.getAffinityKey(), (k, queue) -> {
+            queue.remove(session);
+            return queue.isEmpty() ? null : queue;
+        });
+    }
+
+    /**
+     * Get the number of affinity keys with sessions waiting.
+     */
+    int getPendingKeyCount() {
+        return keyedAgents.size() + keyedExtensions.size();
+    }
+
+    void clear() {
+        sessions.clear();
+        keyedAgents.clear();
+        keyedExtensions.clear();
+    }
+
+    private ConcurrentHashMap<String, Queue<Session>> keyed(ClientType type) {
+        return type == ClientType.AGENT ? keyedAgents : keyedExtensions;
+    }
+}
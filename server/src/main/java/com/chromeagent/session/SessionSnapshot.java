@@ -0,0 +1,169 @@
+package com.chromeagent.session;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Session metadata persisted across a restart, stored as Smile.
+ * Holds IDs, resume tokens, client types, affinity keys, pairings and
+ * retention deadlines only; channels, replay buffers and pending requests
+ * are not kept. The file holds resume tokens, so keep it private.
+ */
+public class SessionSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(SessionSnapshot.class);
+    private static final int VERSION = 1;
+    private static final FileAttribute<?> OWNER_ONLY =
+            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"));
+    private static final ObjectMapper mapper = new ObjectMapper(new SmileFactory())
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private int version = VERSION;
+    private long takenAtMillis;
+    private List<Entry> sessions = new ArrayList<>();
+
+    /**
+     * Write a snapshot atomically (temp file, then rename). The temp file
+     * is unique to this write and, where the file system supports POSIX
+     * permissions, readable by the owner only.
+     */
+    public static void write(Path path, SessionSnapshot snapshot) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+
+        String prefix = path.getFileName() + ".";
+        Path temp = parent.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? Files.createTempFile(parent, prefix, ".tmp", OWNER_ONLY)
+                : Files.createTempFile(parent, prefix, ".tmp");
+        try {
+            mapper.writeValue(temp.toFile(), snapshot);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Read a snapshot and delete the file, so it is only restored once.
+     *
+     * @return The snapshot, or null if there is none or it is unreadable
+     */
+    public static SessionSnapshot readAndDelete(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            SessionSnapshot snapshot = mapper.readValue(path.toFile(), SessionSnapshot.class);
+            if (snapshot.getVersion() != VERSION) {
+                logger.warn("Ignoring session snapshot with version {} (expected {})",
+                        snapshot.getVersion(), VERSION);
+                return null;
+            }
+            return snapshot;
+        } catch (IOException e) {
+            logger.error("Failed to read session snapshot: {}", path, e);
+            return null;
+        } finally {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                logger.warn("Failed to delete session snapshot: {}", path, e);
+            }
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public long getTakenAtMillis() {
+        return takenAtMillis;
+    }
+
+    public void setTakenAtMillis(long takenAtMillis) {
+        this.takenAtMillis = takenAtMillis;
+    }
+
+    public List<Entry> getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(List<Entry> sessions) {
+        this.sessions = sessions;
+    }
+
+    /**
+     * One persisted session.
+     */
+    public static class Entry {
+        private String sessionId;
+        private String resumeToken;
+        private ClientType clientType;
+        private String affinityKey;
+        private String pairedSessionId;
+        private long retentionDeadlineMillis;
+
+        public String getSessionId() {
+            return sessionId;
+        }
+
+        public void setSessionId(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        public String getResumeToken() {
+            return resumeToken;
+        }
+
+        public void setResumeToken(String resumeToken) {
+            this.resumeToken = resumeToken;
+        }
+
+        public ClientType getClientType() {
+            return clientType;
+        }
+
+        public void setClientType(ClientType clientType) {
+            this.clientType = clientType;
+        }
+
+        public String getAffinityKey() {
+            return affinityKey;
+        }
+
+        public void setAffinityKey(String affinityKey) {
+            this.affinityKey = affinityKey;
+        }
+
+        public String getPairedSessionId() {
+            return pairedSessionId;
+        }
+
+        public void setPairedSessionId(String pairedSessionId) {
+            this.pairedSessionId = pairedSessionId;
+        }
+
+        public long getRetentionDeadlineMillis() {
+            return retentionDeadlineMillis;
+        }
+
+        public void setRetentionDeadlineMillis(long retentionDeadlineMillis) {
+            this.retentionDeadlineMillis = retentionDeadlineMillis;
+        }
+    }
+}
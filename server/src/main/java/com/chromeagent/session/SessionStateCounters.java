@@ -0,0 +1,54 @@
+package com.chromeagent.session;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live session counts per client type and state.
+ * Updated on every state transition so reads are O(1) regardless of the
+ * number of sessions. Terminated sessions are not counted.
+ */
+public class SessionStateCounters {
+    private final AtomicInteger[][] counts;
+
+    public SessionStateCounters() {
+        this.counts = new AtomicInteger[ClientType.values().length][SessionState.values().length];
+        for (AtomicInteger[] row : counts) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] = new AtomicInteger();
+            }
+        }
+    }
+
+    /**
+     * Record a state transition of a session.
+     *
+     * @param type Client type of the session
+     * @param from Previous state (null for a new session)
+     * @param to New state
+     */
+    void transition(ClientType type, SessionState from, SessionState to) {
+        if (from == to) {
+            return;
+        }
+        if (from != null && from != SessionState.TERMINATED) {
+            counts[type.ordinal()][from.ordinal()].decrementAndGet();
+        }
+        if (to != null && to != SessionState.TERMINATED) {
+            counts[type.ordinal()][to.ordinal()].incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of sessions of a type in a state.
+     */
+    public int get(ClientType type, SessionState state) {
+        return counts[type.ordinal()][state.ordinal()].get();
+    }
+
+    /**
+     * Get the number of connected (CONNECTED or PAIRED) sessions of a type.
+     */
+    public int getActive(ClientType type) {
+        return get(type, SessionState.CONNECTED) + get(type, SessionState.PAIRED);
+    }
+}
@@ -0,0 +1,84 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingAIServiceTest {
+    private final StubAIService delegate = new StubAIService();
+    private final CachingAIService cache = new CachingAIService(delegate, ServerConfig.builder()
+            .aiCacheMaxEntries(100)
+            .aiCacheTtlSeconds(60)
+            .build());
+
+    @Test
+    void repeatedPromptIsServedFromCache() {
+        cache.processAsync(AIRequest.of("page info")).join();
+        ObjectNode result = cache.processAsync(AIRequest.of("  page   info. ")).join();
+
+        assertEquals("page info", result.path("prompt").asText());
+        assertEquals(List.of("page info"), delegate.prompts);
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    void promptsDifferingInCaseAreCachedApart() {
+        ObjectNode first = cache.processAsync(AIRequest.of("click #SubmitBtn")).join();
+        ObjectNode second = cache.processAsync(AIRequest.of("click #submitbtn")).join();
+        cache.processAsync(AIRequest.of("type 'Hello'")).join();
+        cache.processAsync(AIRequest.of("type 'hello'")).join();
+
+        assertEquals("click #SubmitBtn", first.path("prompt").asText());
+        assertEquals("click #submitbtn", second.path("prompt").asText());
+        assertEquals(4, delegate.prompts.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void requestWithHistoryBypassesCache() {
+        AIRequest followUp = AIRequest.of("the next one")
+                .withHistory(List.of(new AIRequest.Exchange("page info", "Called GET_PAGE_INFO.")));
+
+        cache.processAsync(followUp).join();
+        cache.processAsync(followUp).join();
+
+        assertEquals(2, delegate.prompts.size());
+        assertEquals(0, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Answers every prompt with a command echoing it and records the prompts.
+     */
+    private static final class StubAIService implements AIService {
+        final List<String> prompts = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ObjectNode processNaturalLanguage(String prompt) {
+            return processAsync(AIRequest.of(prompt)).join();
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+            return processAsync(AIRequest.of(prompt));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+            prompts.add(request.getPrompt());
+            ObjectNode result = JsonNodeFactory.instance.objectNode()
+                    .put("command", "GET_PAGE_INFO")
+                    .put("prompt", request.getPrompt());
+            return CompletableFuture.completedFuture(result);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.chromeagent.ai;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 1, TimeUnit.MINUTES);
+
+        breaker.recordFailure();
+        breaker.recordFailure();
+        breaker.recordSuccess();
+        breaker.recordFailure();
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.recordFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void halfOpenAllowsOneProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, TimeUnit.MILLISECONDS);
+        breaker.recordFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    void failedProbeReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, TimeUnit.MILLISECONDS);
+        breaker.recordFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.allowRequest());
+        breaker.recordFailure();
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getOpenCount());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    void releasedProbeLetsTheNextCallProbe() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 50, TimeUnit.MILLISECONDS);
+        breaker.recordFailure();
+        Thread.sleep(80);
+
+        assertTrue(breaker.allowRequest());
+        breaker.releaseProbe();
+
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertEquals(1, breaker.getOpenCount());
+    }
+
+    @Test
+    void releaseOutsideHalfOpenChangesNothing() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, 1, TimeUnit.MINUTES);
+        breaker.releaseProbe();
+        assertTrue(breaker.allowRequest());
+
+        breaker.recordFailure();
+        breaker.releaseProbe();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+}
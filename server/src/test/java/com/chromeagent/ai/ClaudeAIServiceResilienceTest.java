@@ -0,0 +1,159 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.util.HashedWheelTimer;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Retries, rate limiting and the circuit breaker of ClaudeAIService against
+ * a local mock of the Messages API.
+ */
+class ClaudeAIServiceResilienceTest {
+    private static final String TOOL_USE_BODY = "{\"content\":[{\"type\":\"tool_use\",\"name\":\"get_page_info\","
+            + "\"input\":{}}],\"usage\":{\"input_tokens\":10,\"output_tokens\":5}}";
+
+    private MockWebServer server;
+    private HashedWheelTimer timer;
+    private ClaudeAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (service != null) {
+            service.shutdown();
+        }
+        timer.stop();
+        server.shutdown();
+    }
+
+    private ClaudeAIService newService(int maxRetries, int retryBudgetPercent, int circuitFailureThreshold,
+                                       int circuitOpenSeconds) {
+        ServerConfig config = ServerConfig.builder()
+                .claudeApiKey("test-key")
+                .claudeApiUrl(server.url("/v1/messages").toString())
+                .aiMaxRetries(maxRetries)
+                .aiRetryBudgetPercent(retryBudgetPercent)
+                .aiCircuitFailureThreshold(circuitFailureThreshold)
+                .aiCircuitOpenSeconds(circuitOpenSeconds)
+                .build();
+        service = new ClaudeAIService(config, timer);
+        return service;
+    }
+
+    private static MockResponse toolUse() {
+        return new MockResponse().setHeader("Content-Type", "application/json").setBody(TOOL_USE_BODY);
+    }
+
+    private static MockResponse status(int code) {
+        return new MockResponse().setResponseCode(code).setBody("{\"type\":\"error\"}");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void retryAfterOf429PausesOtherCallers() throws Exception {
+        server.enqueue(status(429).setHeader("retry-after", "1"));
+        server.enqueue(toolUse());
+        server.enqueue(toolUse());
+        newService(2, 100, 5, 30);
+
+        CompletableFuture<ObjectNode> first = service.processAsync(AIRequest.of("page info"));
+        awaitTrue(() -> service.getRateLimitedCount() == 1);
+
+        long pausedAt = System.nanoTime();
+        CompletableFuture<ObjectNode> second = service.processAsync(AIRequest.of("page info again"));
+        server.takeRequest(); // the refused call
+        assertNotNull(server.takeRequest(5, TimeUnit.SECONDS));
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pausedAt);
+
+        assertTrue(waitedMillis >= 800, "next call went out after " + waitedMillis + " ms");
+        assertEquals("GET_PAGE_INFO", first.get(5, TimeUnit.SECONDS).path("command").asText());
+        assertEquals("GET_PAGE_INFO", second.get(5, TimeUnit.SECONDS).path("command").asText());
+        assertEquals(1, service.getRetryCount());
+    }
+
+    @Test
+    void rateLimitingDoesNotOpenTheCircuit() throws Exception {
+        server.enqueue(status(429));
+        newService(0, 100, 1, 30);
+
+        ObjectNode result = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.has("error"));
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), service.getCircuitState());
+    }
+
+    @Test
+    void noRetryOnceTheBudgetIsSpent() throws Exception {
+        server.enqueue(status(503));
+        server.enqueue(toolUse());
+        newService(2, 0, 5, 30);
+
+        ObjectNode result = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("API request failed: 503", result.path("error").asText());
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, service.getRetryCount());
+        assertEquals(1, service.getRetryBudgetExhaustedCount());
+    }
+
+    @Test
+    void retriesWithinTheBudget() throws Exception {
+        server.enqueue(status(500));
+        server.enqueue(toolUse());
+        newService(2, 100, 5, 30);
+
+        ObjectNode result = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("GET_PAGE_INFO", result.path("command").asText());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, service.getRetryCount());
+    }
+
+    @Test
+    void circuitOpensFailsFastAndClosesAfterProbe() throws Exception {
+        server.enqueue(status(500));
+        server.enqueue(toolUse());
+        newService(0, 100, 1, 1);
+
+        assertTrue(service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS).has("error"));
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), service.getCircuitState());
+        assertEquals(1, service.getCircuitOpenCount());
+
+        // Open: refused without a call
+        ObjectNode refused = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+        assertTrue(refused.path("error").asText().contains("unavailable"));
+        assertEquals(1, service.getRejectedCount());
+        assertEquals(1, server.getRequestCount());
+
+        // After the open period one probe goes through and closes the circuit
+        Thread.sleep(1100);
+        ObjectNode probed = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+        assertEquals("GET_PAGE_INFO", probed.path("command").asText());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED.ordinal(), service.getCircuitState());
+    }
+}
@@ -0,0 +1,197 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.util.HashedWheelTimer;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Streaming mode of ClaudeAIService against a local SSE stand-in.
+ */
+class ClaudeAIServiceStreamingTest {
+    private MockWebServer server;
+    private HashedWheelTimer timer;
+    private ClaudeAIService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (service != null) {
+            service.shutdown();
+        }
+        timer.stop();
+        server.shutdown();
+    }
+
+    private ClaudeAIService newService(boolean multiTool, int maxRetries, int circuitFailureThreshold) {
+        ServerConfig config = ServerConfig.builder()
+                .claudeApiKey("test-key")
+                .claudeApiUrl(server.url("/v1/messages").toString())
+                .aiStreaming(true)
+                .aiMultiTool(multiTool)
+                .aiMaxRetries(maxRetries)
+                .aiRetryBudgetPercent(100)
+                .aiCircuitFailureThreshold(circuitFailureThreshold)
+                .build();
+        service = new ClaudeAIService(config, timer);
+        return service;
+    }
+
+    private static MockResponse stream(String... events) {
+        StringBuilder body = new StringBuilder();
+        for (String event : events) {
+            body.append("data: ").append(event).append("\n\n");
+        }
+        return new MockResponse()
+                .setHeader("Content-Type", "text/event-stream")
+                .setBody(body.toString());
+    }
+
+    private static String messageStart() {
+        return "{\"type\":\"message_start\",\"message\":{\"usage\":{\"input_tokens\":10,\"output_tokens\":1}}}";
+    }
+
+    private static String toolStart(int index, String name) {
+        return "{\"type\":\"content_block_start\",\"index\":" + index
+                + ",\"content_block\":{\"type\":\"tool_use\",\"name\":\"" + name + "\",\"input\":{}}}";
+    }
+
+    private static String inputDelta(int index, String partialJson) {
+        return "{\"type\":\"content_block_delta\",\"index\":" + index
+                + ",\"delta\":{\"type\":\"input_json_delta\",\"partial_json\":\""
+                + partialJson.replace("\"", "\\\"") + "\"}}";
+    }
+
+    private static String blockStop(int index) {
+        return "{\"type\":\"content_block_stop\",\"index\":" + index + "}";
+    }
+
+    private static String messageDelta() {
+        return "{\"type\":\"message_delta\",\"delta\":{\"stop_reason\":\"tool_use\"},\"usage\":{\"output_tokens\":20}}";
+    }
+
+    private static String messageStop() {
+        return "{\"type\":\"message_stop\"}";
+    }
+
+    private static String error() {
+        return "{\"type\":\"error\",\"error\":{\"type\":\"overloaded_error\",\"message\":\"Overloaded\"}}";
+    }
+
+    @Test
+    void singleToolCompletesWhenItsBlockStops() throws Exception {
+        // The stream fails after the tool call closed: the command stands
+        server.enqueue(stream(messageStart(), toolStart(0, "extract_dom"),
+                inputDelta(0, "{\"selector\":"), inputDelta(0, "\"h1\"}"), blockStop(0), error()));
+        newService(false, 2, 1);
+
+        List<String> selected = new CopyOnWriteArrayList<>();
+        AIRequest request = AIRequest.of("get the heading").withListener(new AIRequest.Listener() {
+            @Override
+            public void onCommandSelected(String command) {
+                selected.add(command);
+            }
+        });
+
+        ObjectNode result = service.processAsync(request).get(5, TimeUnit.SECONDS);
+
+        assertEquals("EXTRACT_DOM", result.path("command").asText());
+        assertEquals("h1", result.path("params").path("selector").asText());
+        assertEquals(List.of("EXTRACT_DOM"), selected);
+        assertEquals(1, server.getRequestCount());
+        assertEquals(0, service.getRetryCount());
+        assertEquals(0, service.getCircuitState());
+    }
+
+    @Test
+    void multiToolCompletesOnceTheToolListIsKnown() throws Exception {
+        // No message_stop: the result must not wait for it
+        server.enqueue(stream(messageStart(),
+                toolStart(0, "extract_cookies"), blockStop(0),
+                toolStart(1, "extract_form"), inputDelta(1, "{\"selector\":\"#login\"}"), blockStop(1),
+                messageDelta()));
+        newService(true, 0, 5);
+
+        ObjectNode result = service.processAsync(AIRequest.of("cookies and the login form"))
+                .get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, result.path("commands").size());
+        assertEquals("EXTRACT_COOKIES", result.path("commands").get(0).path("command").asText());
+        assertEquals("#login", result.path("commands").get(1).path("params").path("selector").asText());
+        assertEquals(0, service.getCircuitState());
+    }
+
+    @Test
+    void errorEventBeforeTheResultIsRetried() throws Exception {
+        server.enqueue(stream(messageStart(), error()));
+        server.enqueue(stream(messageStart(), toolStart(0, "get_page_info"), blockStop(0),
+                messageDelta(), messageStop()));
+        newService(false, 2, 5);
+
+        ObjectNode result = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+
+        assertEquals("GET_PAGE_INFO", result.path("command").asText());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(1, service.getRetryCount());
+    }
+
+    @Test
+    void retryDoesNotReportTheCommandAgain() throws Exception {
+        server.enqueue(stream(messageStart(), toolStart(0, "extract_dom"), error()));
+        server.enqueue(stream(messageStart(), toolStart(0, "extract_dom"),
+                inputDelta(0, "{\"selector\":\"h1\"}"), blockStop(0), messageDelta(), messageStop()));
+        newService(false, 2, 5);
+
+        List<String> selected = new CopyOnWriteArrayList<>();
+        AIRequest request = AIRequest.of("get the heading").withListener(new AIRequest.Listener() {
+            @Override
+            public void onCommandSelected(String command) {
+                selected.add(command);
+            }
+        });
+
+        ObjectNode result = service.processAsync(request).get(5, TimeUnit.SECONDS);
+
+        assertEquals("EXTRACT_DOM", result.path("command").asText());
+        assertEquals(2, server.getRequestCount());
+        assertEquals(List.of("EXTRACT_DOM"), selected);
+    }
+
+    @Test
+    void streamFailureCountsAgainstTheCircuit() throws Exception {
+        server.enqueue(stream(messageStart(), error()));
+        newService(false, 0, 1);
+
+        ObjectNode result = service.processAsync(AIRequest.of("page info")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.has("error"));
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), service.getCircuitState());
+    }
+
+    @Test
+    void prematureEndIsAFailure() throws Exception {
+        server.enqueue(stream(messageStart(), toolStart(0, "extract_dom")));
+        newService(false, 0, 1);
+
+        ObjectNode result = service.processAsync(AIRequest.of("headings")).get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.path("error").asText().contains("ended unexpectedly"));
+        assertEquals(CircuitBreaker.State.OPEN.ordinal(), service.getCircuitState());
+    }
+}
@@ -0,0 +1,58 @@
+package com.chromeagent.ai;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConversationContextTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private static byte[] prefix(String payload) {
+        byte[] bytes = payload.getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(bytes, Math.min(bytes.length, ConversationContext.RESULT_PREFIX_BYTES));
+    }
+
+    @Test
+    void rawAndParsedSummariesAgree() throws Exception {
+        String[] payloads = {
+                "{\"success\":true,\"data\":{\"title\":\"Home\",\"links\":3}}",
+                "{\"success\":false,\"error\":{\"code\":\"NOT_FOUND\",\"message\":\"No form\"}}",
+                "{\"success\":true,\"data\":\"" + "x".repeat(10_000) + "\"}",
+                "{\"success\":true}",
+        };
+        for (String payload : payloads) {
+            assertEquals(ConversationContext.summarizeResult(MAPPER.readTree(payload)),
+                    ConversationContext.summarizeRawResult(prefix(payload)), payload);
+        }
+    }
+
+    @Test
+    void largeResultIsCutShort() throws Exception {
+        String payload = "{\"success\":true,\"data\":{\"rows\":[" + "1,".repeat(50_000) + "1]}}";
+
+        String raw = ConversationContext.summarizeRawResult(prefix(payload));
+        String parsed = ConversationContext.summarizeResult(MAPPER.readTree(payload));
+
+        assertTrue(raw.startsWith("ok: {\"rows\":[1,1,"));
+        assertTrue(raw.endsWith("..."));
+        assertEquals(parsed, raw);
+    }
+
+    @Test
+    void resultOnlyRecordedForKeptTurn() throws Exception {
+        ConversationContext context = new ConversationContext(2000, 1);
+        context.addTurn("r1", "page info", MAPPER.readTree("{\"command\":\"GET_PAGE_INFO\",\"params\":{}}"));
+        context.addTurn("r2", "the cookies", MAPPER.readTree("{\"command\":\"EXTRACT_COOKIES\",\"params\":{}}"));
+
+        assertFalse(context.hasTurn("r1"));
+        assertTrue(context.hasTurn("r2"));
+
+        context.recordRawResult("r2", prefix("{\"success\":true,\"data\":{\"cookies\":[]}}"));
+        String reply = context.getHistory().get(context.getHistory().size() - 1).getReply();
+        assertEquals("Called EXTRACT_COOKIES. Result: ok: {\"cookies\":[]}", reply);
+    }
+}
@@ -0,0 +1,135 @@
+package com.chromeagent.ai;
+
+import com.chromeagent.config.ServerConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelRoutingAIServiceTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String FAST = "fast-model";
+
+    private final StubAIService delegate = new StubAIService();
+    private final ModelRoutingAIService routing = new ModelRoutingAIService(delegate, ServerConfig.builder()
+            .aiFastModel(FAST)
+            .aiFastMaxPromptChars(40)
+            .aiLargeModelKeywords("then,each")
+            .build());
+
+    private static ObjectNode json(String json) throws Exception {
+        return (ObjectNode) MAPPER.readTree(json);
+    }
+
+    @Test
+    void simplePromptAnsweredByFastModel() throws Exception {
+        delegate.answers.put(FAST, json("{\"command\":\"GET_PAGE_INFO\",\"params\":{}}"));
+
+        ObjectNode result = routing.processAsync(AIRequest.of("page info")).join();
+
+        assertEquals("GET_PAGE_INFO", result.path("command").asText());
+        assertEquals(List.of(FAST), delegate.models);
+        assertEquals(0, routing.getEscalationCount());
+    }
+
+    @Test
+    void textAnswerEscalatesToConfiguredModel() throws Exception {
+        delegate.answers.put(FAST, json("{\"error\":\"Unable to convert to command: ?\",\"noToolUse\":true}"));
+        delegate.answers.put(null, json("{\"command\":\"EXTRACT_FORM\",\"params\":{}}"));
+
+        ObjectNode result = routing.processAsync(AIRequest.of("the form")).join();
+
+        assertEquals("EXTRACT_FORM", result.path("command").asText());
+        assertEquals(Arrays.asList(FAST, null), delegate.models);
+        assertEquals(1, routing.getEscalationCount());
+    }
+
+    @Test
+    void incompleteCommandEscalates() throws Exception {
+        delegate.answers.put(FAST, json("{\"command\":\"EXTRACT_DOM\",\"params\":{\"selector\":\"\"}}"));
+        delegate.answers.put(null, json("{\"command\":\"EXTRACT_DOM\",\"params\":{\"selector\":\"h1\"}}"));
+
+        ObjectNode result = routing.processAsync(AIRequest.of("the heading")).join();
+
+        assertEquals("h1", result.path("params").path("selector").asText());
+        assertEquals(1, routing.getEscalationCount());
+    }
+
+    @Test
+    void escalationDoesNotReportTheCommandAgain() throws Exception {
+        delegate.answers.put(FAST, json("{\"command\":\"EXTRACT_DOM\",\"params\":{}}"));
+        delegate.answers.put(null, json("{\"command\":\"EXTRACT_DOM\",\"params\":{\"selector\":\"h1\"}}"));
+
+        List<String> selected = new CopyOnWriteArrayList<>();
+        routing.processAsync(AIRequest.of("the heading").withListener(new AIRequest.Listener() {
+            @Override
+            public void onCommandSelected(String command) {
+                selected.add(command);
+            }
+        })).join();
+
+        assertEquals(Arrays.asList(FAST, null), delegate.models);
+        assertEquals(List.of("EXTRACT_DOM"), selected);
+    }
+
+    @Test
+    void failedFastCallIsNotEscalated() throws Exception {
+        delegate.answers.put(FAST, json("{\"error\":\"API request failed: 500\"}"));
+
+        ObjectNode result = routing.processAsync(AIRequest.of("page info")).join();
+
+        assertTrue(result.has("error"));
+        assertEquals(List.of(FAST), delegate.models);
+        assertEquals(0, routing.getEscalationCount());
+    }
+
+    @Test
+    void longOrKeywordPromptsSkipFastModel() throws Exception {
+        delegate.answers.put(null, json("{\"command\":\"EXTRACT_DOM\",\"params\":{\"selector\":\"a\"}}"));
+
+        routing.processAsync(AIRequest.of("find the form then extract each field")).join();
+        routing.processAsync(AIRequest.of("x".repeat(41))).join();
+
+        assertEquals(Arrays.asList(null, null), delegate.models);
+        assertEquals(0, routing.getFastCallCount());
+        assertEquals(2, routing.getLargeCallCount());
+    }
+
+    /**
+     * Answers by requested model (null is the configured model), reporting
+     * the answer's command to the listener first, and records the model of
+     * every call.
+     */
+    private static final class StubAIService implements AIService {
+        final Map<String, ObjectNode> answers = new HashMap<>();
+        final List<String> models = new CopyOnWriteArrayList<>();
+
+        @Override
+        public ObjectNode processNaturalLanguage(String prompt) {
+            return processAsync(AIRequest.of(prompt)).join();
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> processNaturalLanguageAsync(String prompt) {
+            return processAsync(AIRequest.of(prompt));
+        }
+
+        @Override
+        public CompletableFuture<ObjectNode> processAsync(AIRequest request) {
+            models.add(request.getModel());
+            ObjectNode answer = answers.get(request.getModel()).deepCopy();
+            if (answer.has("command")) {
+                request.getListener().onCommandSelected(answer.get("command").asText());
+            }
+            return CompletableFuture.completedFuture(answer);
+        }
+    }
+}
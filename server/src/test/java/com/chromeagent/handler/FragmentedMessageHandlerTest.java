@@ -0,0 +1,127 @@
+package com.chromeagent.handler;
+
+import com.chromeagent.config.ServerConfig;
+import com.chromeagent.error.ErrorCode;
+import com.chromeagent.message.MessageType;
+import com.chromeagent.router.RequestTracker;
+import com.chromeagent.session.ClientType;
+import com.chromeagent.session.Session;
+import com.chromeagent.session.SessionManager;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class FragmentedMessageHandlerTest {
+    private static final String OPENING = "{\"type\":\"" + MessageType.RESPONSE.getValue()
+            + "\",\"requestId\":\"req-1\",\"payload\":{\"rows\":[";
+
+    private final HashedWheelTimer timer = new HashedWheelTimer();
+    private RequestTracker tracker;
+    private EmbeddedChannel agent;
+    private EmbeddedChannel extension;
+
+    @BeforeEach
+    void setUp() {
+        ServerConfig config = ServerConfig.builder().build();
+        SessionManager sessionManager = new SessionManager(config, timer, Runnable::run);
+        tracker = spy(new RequestTracker(config, timer));
+
+        agent = new EmbeddedChannel(new FragmentedWriteGuard());
+        extension = new EmbeddedChannel(new FragmentedMessageHandler(sessionManager, tracker, 1024 * 1024));
+        Session agentSession = sessionManager.createSession(agent, ClientType.AGENT, null);
+        sessionManager.createSession(extension, ClientType.EXTENSION, null);
+        tracker.trackRequest("req-1", agent, agentSession.getSessionId(), MessageType.COMMAND);
+        // Drop the pairing notices
+        outbound(agent);
+        outbound(extension);
+    }
+
+    @AfterEach
+    void tearDown() {
+        agent.finishAndReleaseAll();
+        extension.finishAndReleaseAll();
+        timer.stop();
+    }
+
+    private static TextWebSocketFrame first(String text) {
+        return new TextWebSocketFrame(false, 0, Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    }
+
+    private static ContinuationWebSocketFrame next(String text, boolean last) {
+        return new ContinuationWebSocketFrame(last, 0, Unpooled.copiedBuffer(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read every frame written to a channel as [class, final, text].
+     */
+    private static List<String> outbound(EmbeddedChannel channel) {
+        List<String> frames = new ArrayList<>();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            WebSocketFrame frame = (WebSocketFrame) msg;
+            frames.add(frame.getClass().getSimpleName() + " " + frame.isFinalFragment() + " "
+                    + frame.content().toString(StandardCharsets.UTF_8));
+            ReferenceCountUtil.release(frame);
+        }
+        return frames;
+    }
+
+    @Test
+    void streamedFragmentsExtendTheRequest() {
+        extension.writeInbound(first(OPENING));
+        extension.writeInbound(next("1,2,", false));
+        extension.writeInbound(next("3]}}", true));
+
+        verify(tracker, times(2)).extendRequest("req-1");
+        assertFalse(tracker.isPending("req-1"));
+        List<String> frames = outbound(agent);
+        assertEquals(3, frames.size());
+        assertTrue(frames.get(2).startsWith("ContinuationWebSocketFrame true 3]}}"));
+    }
+
+    @Test
+    void extensionDisconnectClosesTheAgentMessageAndFailsTheRequest() {
+        extension.writeInbound(first(OPENING));
+        extension.close();
+
+        assertFalse(tracker.isPending("req-1"));
+        List<String> frames = outbound(agent);
+        assertEquals(3, frames.size());
+        assertTrue(frames.get(0).startsWith("TextWebSocketFrame false"));
+        assertEquals("ContinuationWebSocketFrame true ", frames.get(1));
+        assertTrue(frames.get(2).contains(ErrorCode.CONNECTION_LOST.getCode()));
+        assertTrue(frames.get(2).contains("req-1"));
+    }
+
+    @Test
+    void malformedFragmentClosesTheAgentMessageAndFailsTheRequest() {
+        extension.writeInbound(first(OPENING));
+        extension.writeInbound(next("1,}}", false));
+        extension.writeInbound(next("2]}}", true));
+
+        assertFalse(tracker.isPending("req-1"));
+        List<String> frames = outbound(agent);
+        assertEquals(3, frames.size());
+        assertEquals("ContinuationWebSocketFrame true ", frames.get(1));
+        assertTrue(frames.get(2).contains(ErrorCode.INVALID_MESSAGE.getCode()));
+        assertTrue(outbound(extension).get(0).contains(ErrorCode.INVALID_MESSAGE.getCode()));
+
+        // The guard no longer holds the agent's frames back
+        agent.writeAndFlush(new TextWebSocketFrame("{}"));
+        assertEquals(List.of("TextWebSocketFrame true {}"), outbound(agent));
+    }
+}
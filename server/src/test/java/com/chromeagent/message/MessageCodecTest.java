@@ -0,0 +1,41 @@
+package com.chromeagent.message;
+
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageCodecTest {
+    private final MessageCodec codec = MessageCodec.getInstance();
+
+    private Optional<Message> decode(String json) {
+        return codec.decode(Unpooled.copiedBuffer(json, StandardCharsets.UTF_8), WireFormat.JSON);
+    }
+
+    @Test
+    void relayedPayloadIsCopiedVerbatim() {
+        String payload = "{ \"title\" : \"caf\u00e9 \\u00e9\",\n  \"rows\":[1, 2.50, \"" + "x".repeat(20_000) + "\"] }";
+        Message message = decode("{\"type\":\"RESPONSE\",\"requestId\":\"req-1\",\"payload\":" + payload
+                + ",\"chunkIndex\":2}").orElseThrow();
+
+        String encoded = new String(codec.encodeBytes(message), StandardCharsets.UTF_8);
+
+        assertTrue(encoded.contains("\"payload\":" + payload + ","), encoded.substring(0, 80));
+        Message relayed = decode(encoded).orElseThrow();
+        assertEquals("req-1", relayed.getRequestId());
+        assertEquals(2, relayed.getChunkIndex());
+        assertEquals("caf\u00e9 \u00e9", relayed.getPayload().path("title").asText());
+    }
+
+    @Test
+    void chunkIndexMustBeAnInteger() {
+        assertTrue(decode("{\"type\":\"RESPONSE_CHUNK\",\"chunkIndex\":\"3\"}").isEmpty());
+        assertTrue(decode("{\"type\":\"RESPONSE_CHUNK\",\"chunkIndex\":1.5}").isEmpty());
+        assertTrue(decode("{\"type\":\"RESPONSE_CHUNK\",\"chunkIndex\":true}").isEmpty());
+        assertTrue(decode("{\"type\":\"RESPONSE_CHUNK\",\"lastChunk\":\"yes\"}").isEmpty());
+        assertEquals(3, decode("{\"type\":\"RESPONSE_CHUNK\",\"chunkIndex\":3}").orElseThrow().getChunkIndex());
+    }
+}
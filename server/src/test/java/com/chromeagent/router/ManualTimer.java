@@ -0,0 +1,99 @@
+package com.chromeagent.router;
+
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer whose timeouts only fire when the test says so.
+ */
+class ManualTimer implements Timer {
+    private final List<ManualTimeout> timeouts = new ArrayList<>();
+
+    @Override
+    public synchronized Timeout newTimeout(TimerTask task, long delay, TimeUnit unit) {
+        ManualTimeout timeout = new ManualTimeout(task);
+        timeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Fire every timeout that has not been cancelled or fired yet.
+     */
+    void fireAll() throws Exception {
+        List<ManualTimeout> due;
+        synchronized (this) {
+            due = new ArrayList<>(timeouts);
+            timeouts.clear();
+        }
+        for (ManualTimeout timeout : due) {
+            timeout.fire();
+        }
+    }
+
+    /**
+     * Get the number of timeouts still waiting to fire.
+     */
+    synchronized int pendingCount() {
+        return (int) timeouts.stream().filter(timeout -> !timeout.isCancelled()).count();
+    }
+
+    @Override
+    public synchronized Set<Timeout> stop() {
+        Set<Timeout> unfired = new HashSet<>(timeouts);
+        timeouts.clear();
+        return unfired;
+    }
+
+    private final class ManualTimeout implements Timeout {
+        private final TimerTask task;
+        private volatile boolean cancelled;
+        private volatile boolean expired;
+
+        ManualTimeout(TimerTask task) {
+            this.task = task;
+        }
+
+        void fire() throws Exception {
+            if (!cancelled && !expired) {
+                expired = true;
+                task.run(this);
+            }
+        }
+
+        @Override
+        public Timer timer() {
+            return ManualTimer.this;
+        }
+
+        @Override
+        public TimerTask task() {
+            return task;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return expired;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (expired || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.chromeagent.router;
+
+import com.chromeagent.config.ServerConfig;
+import com.chromeagent.error.ErrorCode;
+import com.chromeagent.message.Message;
+import com.chromeagent.message.MessageType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestTrackerTest {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final ManualTimer timer = new ManualTimer();
+    private final RequestTracker tracker = new RequestTracker(
+            ServerConfig.builder().commandTimeoutSeconds(30).build(), timer);
+
+    private static JsonNode json(String json) throws Exception {
+        return MAPPER.readTree(json);
+    }
+
+    private static Message chunk(int index, boolean last) {
+        Message chunk = new Message();
+        chunk.setType(MessageType.RESPONSE_CHUNK);
+        chunk.setChunkIndex(index);
+        chunk.setLastChunk(last);
+        return chunk;
+    }
+
+    private static List<Integer> indexes(List<Message> chunks) {
+        return chunks.stream().map(Message::getChunkIndex).toList();
+    }
+
+    private void respond(String subRequestId, String payload) throws Exception {
+        RequestTracker.PendingRequest pending = tracker.completeRequest(subRequestId).orElseThrow();
+        tracker.completeGroupMember(pending, json(payload));
+    }
+
+    @Test
+    void groupAggregatesOnceEveryCommandAnswered() throws Exception {
+        List<ObjectNode> delivered = new CopyOnWriteArrayList<>();
+        List<String> ids = tracker.trackGroup("req-1", List.of("EXTRACT_COOKIES", "EXTRACT_FORM"),
+                null, "agent-1", delivered::add);
+
+        assertEquals(List.of("req-1#0", "req-1#1"), ids);
+
+        respond("req-1#1", "{\"success\":true,\"data\":{\"fields\":2}}");
+        assertTrue(delivered.isEmpty());
+        respond("req-1#0", "{\"success\":true,\"data\":{\"cookies\":[]}}");
+
+        assertEquals(1, delivered.size());
+        ObjectNode payload = delivered.get(0);
+        assertTrue(payload.path("success").asBoolean());
+        JsonNode results = payload.path("results");
+        assertEquals("EXTRACT_COOKIES", results.get(0).path("command").asText());
+        assertEquals("req-1#0", results.get(0).path("requestId").asText());
+        assertEquals(2, results.get(1).path("data").path("fields").asInt());
+        assertEquals(0, tracker.getPendingCount());
+        assertEquals(0, timer.pendingCount());
+    }
+
+    @Test
+    void timedOutCommandBecomesItsEntry() throws Exception {
+        List<ObjectNode> delivered = new CopyOnWriteArrayList<>();
+        tracker.trackGroup("req-2", List.of("GET_PAGE_INFO", "EXTRACT_DOM"), null, "agent-1", delivered::add);
+
+        respond("req-2#0", "{\"success\":true,\"data\":{\"title\":\"Home\"}}");
+        timer.fireAll();
+
+        assertEquals(1, delivered.size());
+        ObjectNode payload = delivered.get(0);
+        assertFalse(payload.path("success").asBoolean());
+        JsonNode results = payload.path("results");
+        assertTrue(results.get(0).path("success").asBoolean());
+        assertEquals("Home", results.get(0).path("data").path("title").asText());
+        assertFalse(results.get(1).path("success").asBoolean());
+        assertEquals(ErrorCode.TIMEOUT.getCode(), results.get(1).path("error").path("code").asText());
+        assertEquals(1, tracker.getTimedOutCount());
+
+        // A late answer neither reopens the group nor delivers again
+        assertTrue(tracker.completeRequest("req-2#1").isEmpty());
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    void failedCommandFailsTheAggregate() throws Exception {
+        List<ObjectNode> delivered = new CopyOnWriteArrayList<>();
+        tracker.trackGroup("req-3", List.of("EXTRACT_COOKIES", "EXTRACT_FORM"), null, "agent-1", delivered::add);
+
+        respond("req-3#0", "{\"success\":true,\"data\":{}}");
+        respond("req-3#1", "{\"success\":false,\"error\":{\"code\":\"NOT_FOUND\",\"message\":\"No form\"}}");
+
+        ObjectNode payload = delivered.get(0);
+        assertFalse(payload.path("success").asBoolean());
+        assertEquals("No form", payload.path("results").get(1).path("error").path("message").asText());
+    }
+
+    @Test
+    void chunksAreReleasedInOrder() {
+        RequestTracker.PendingRequest pending = new RequestTracker.PendingRequest(
+                "req-4", null, "agent-1", Instant.now(), MessageType.CHAT);
+
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(2, false))));
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(1, false))));
+        assertEquals(List.of(0, 1, 2), indexes(pending.acceptChunk(chunk(0, false))));
+
+        // A chunk already delivered, and a duplicate of one still waiting, are dropped
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(1, false))));
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(4, true))));
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(4, true))));
+        assertFalse(pending.isChunkStreamComplete());
+
+        assertEquals(List.of(3, 4), indexes(pending.acceptChunk(chunk(3, false))));
+        assertTrue(pending.isChunkStreamComplete());
+        assertEquals(List.of(), indexes(pending.acceptChunk(chunk(5, false))));
+    }
+
+    @Test
+    void chunksWaitingForAGapAreCapped() {
+        RequestTracker.PendingRequest pending = new RequestTracker.PendingRequest(
+                "req-5", null, "agent-1", Instant.now(), MessageType.CHAT);
+
+        // Chunk 0 never arrives
+        for (int i = 1; i <= 256; i++) {
+            assertNotNull(pending.acceptChunk(chunk(i, false)));
+        }
+        assertNull(pending.acceptChunk(chunk(257, false)));
+    }
+
+    @Test
+    void unansweredRequestTimesOutWithAnError() throws Exception {
+        EmbeddedChannel agent = new EmbeddedChannel();
+        tracker.trackRequest("req-6", agent, "agent-1", MessageType.CHAT);
+
+        timer.fireAll();
+
+        assertFalse(tracker.isPending("req-6"));
+        assertEquals(1, tracker.getTimedOutCount());
+        TextWebSocketFrame frame = agent.readOutbound();
+        try {
+            JsonNode error = json(frame.text());
+            assertEquals("req-6", error.path("requestId").asText());
+            assertTrue(frame.text().contains(ErrorCode.TIMEOUT.getCode()));
+        } finally {
+            frame.release();
+        }
+        agent.finishAndReleaseAll();
+    }
+
+    @Test
+    void extendingRestartsTheTimeout() throws Exception {
+        tracker.trackRequest("req-7", null, "agent-1", MessageType.CHAT);
+        assertEquals(1, timer.pendingCount());
+
+        assertTrue(tracker.extendRequest("req-7").isPresent());
+        assertEquals(1, timer.pendingCount()); // the first timeout was cancelled
+
+        timer.fireAll();
+        assertFalse(tracker.isPending("req-7"));
+        assertEquals(1, tracker.getTimedOutCount());
+        assertTrue(tracker.extendRequest("req-7").isEmpty());
+    }
+
+    @Test
+    void completedRequestDoesNotTimeOut() throws Exception {
+        tracker.trackRequest("req-8", null, "agent-1", MessageType.CHAT);
+
+        assertTrue(tracker.completeRequest("req-8").isPresent());
+        timer.fireAll();
+
+        assertEquals(0, tracker.getTimedOutCount());
+        assertEquals(1, tracker.getCompletedCount());
+    }
+}
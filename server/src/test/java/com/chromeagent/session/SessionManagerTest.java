@@ -0,0 +1,298 @@
+package com.chromeagent.session;
+
+import com.chromeagent.config.ServerConfig;
+import com.chromeagent.message.Message;
+import com.chromeagent.message.MessageCodec;
+import com.chromeagent.message.MessageFactory;
+import com.chromeagent.message.WireFormat;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.WebSocket08FrameEncoder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SessionManagerTest {
+    private final HashedWheelTimer timer = new HashedWheelTimer();
+    private final List<EmbeddedChannel> channels = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        channels.forEach(EmbeddedChannel::finishAndReleaseAll);
+        timer.stop();
+    }
+
+    private SessionManager newManager(ServerConfig.Builder config) {
+        return new SessionManager(config.build(), timer, Runnable::run);
+    }
+
+    private EmbeddedChannel channel() {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channels.add(channel);
+        return channel;
+    }
+
+    @Test
+    void sessionsOnlyPairWithinTheirAffinityKey() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionShards(4));
+
+        Session agentA = manager.createSession(channel(), ClientType.AGENT, "user-a");
+        Session extensionB = manager.createSession(channel(), ClientType.EXTENSION, "user-b");
+        Session keyless = manager.createSession(channel(), ClientType.EXTENSION, null);
+
+        assertFalse(agentA.isPaired());
+        assertFalse(extensionB.isPaired());
+        assertFalse(keyless.isPaired());
+        assertEquals(2, manager.getPendingAffinityKeyCount());
+
+        Session extensionA = manager.createSession(channel(), ClientType.EXTENSION, "user-a");
+
+        assertEquals(extensionA.getSessionId(), agentA.getPairedSessionId());
+        assertEquals(agentA.getSessionId(), extensionA.getPairedSessionId());
+        assertFalse(extensionB.isPaired());
+        assertEquals(1, manager.getPendingAffinityKeyCount());
+    }
+
+    @Test
+    void affinityKeyIsDroppedOnceNobodyWaitsUnderIt() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionShards(4).sessionRetentionSeconds(60));
+
+        EmbeddedChannel agentChannel = channel();
+        Session agent = manager.createSession(agentChannel, ClientType.AGENT, "user-a");
+        EmbeddedChannel extensionChannel = channel();
+        manager.createSession(extensionChannel, ClientType.EXTENSION, "user-b");
+        assertEquals(2, manager.getPendingAffinityKeyCount());
+
+        manager.handleDisconnect(agentChannel);
+        manager.handleDisconnect(extensionChannel);
+        assertEquals(0, manager.getPendingAffinityKeyCount());
+
+        // Back to waiting under its key, once
+        assertTrue(manager.handleReconnect(channel(), agent.getSessionId()));
+        assertEquals(1, manager.getPendingAffinityKeyCount());
+        manager.createSession(channel(), ClientType.EXTENSION, "user-a");
+        assertEquals(0, manager.getPendingAffinityKeyCount());
+    }
+
+    @Test
+    void keylessSessionsPairFifoWithEachOther() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionShards(4));
+
+        Session first = manager.createSession(channel(), ClientType.EXTENSION, null);
+        Session second = manager.createSession(channel(), ClientType.EXTENSION, null);
+        Session keyed = manager.createSession(channel(), ClientType.AGENT, "user-a");
+        Session agent = manager.createSession(channel(), ClientType.AGENT, null);
+
+        assertFalse(keyed.isPaired());
+        assertEquals(first.getSessionId(), agent.getPairedSessionId());
+        assertFalse(second.isPaired());
+    }
+
+    @Test
+    void keysSpreadOverShardsStillFindTheirCounterpart() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionShards(8));
+        List<Session> agents = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            agents.add(manager.createSession(channel(), ClientType.AGENT, "user-" + i));
+        }
+
+        // Extensions arrive in reverse order
+        for (int i = 31; i >= 0; i--) {
+            Session extension = manager.createSession(channel(), ClientType.EXTENSION, "user-" + i);
+            assertEquals(agents.get(i).getSessionId(), extension.getPairedSessionId());
+        }
+        assertEquals(32, manager.getSessionCount(ClientType.AGENT, SessionState.PAIRED));
+    }
+
+    @Test
+    void disconnectedWaiterIsSkipped() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionShards(4));
+
+        EmbeddedChannel staleChannel = channel();
+        Session stale = manager.createSession(staleChannel, ClientType.AGENT, "user-a");
+        manager.handleDisconnect(staleChannel);
+        Session fresh = manager.createSession(channel(), ClientType.AGENT, "user-a");
+
+        Session extension = manager.createSession(channel(), ClientType.EXTENSION, "user-a");
+
+        assertEquals(SessionState.DISCONNECTED, stale.getState());
+        assertEquals(fresh.getSessionId(), extension.getPairedSessionId());
+    }
+
+    @Test
+    void keylessSessionIsQueuedOnceAndLeavesTheQueue() {
+        SessionManager manager = newManager(ServerConfig.builder().sessionRetentionSeconds(60));
+
+        EmbeddedChannel firstChannel = channel();
+        Session agent = manager.createSession(firstChannel, ClientType.AGENT, null);
+        assertEquals(1, manager.getKeylessPendingCount(ClientType.AGENT));
+
+        manager.handleDisconnect(firstChannel);
+        assertEquals(0, manager.getKeylessPendingCount(ClientType.AGENT));
+
+        EmbeddedChannel secondChannel = channel();
+        assertTrue(manager.handleReconnect(secondChannel, agent.getSessionId()));
+        manager.handleDisconnect(secondChannel);
+        assertTrue(manager.handleReconnect(channel(), agent.getSessionId()));
+        assertEquals(1, manager.getKeylessPendingCount(ClientType.AGENT));
+
+        Session extension = manager.createSession(channel(), ClientType.EXTENSION, null);
+        assertEquals(agent.getSessionId(), extension.getPairedSessionId());
+        assertEquals(0, manager.getKeylessPendingCount(ClientType.AGENT));
+        assertEquals(0, manager.getKeylessPendingCount(ClientType.EXTENSION));
+    }
+
+    @Test
+    void failedWriteIsBufferedWhole() {
+        assertFailedWriteBuffered(WireFormat.JSON);
+    }
+
+    @Test
+    void failedSmileWriteIsBufferedWhole() {
+        assertFailedWriteBuffered(WireFormat.SMILE);
+    }
+
+    /**
+     * The frame encoder consumes the frame before the closed channel fails
+     * the write; what gets buffered must still be the whole message.
+     */
+    private void assertFailedWriteBuffered(WireFormat format) {
+        SessionManager manager = newManager(ServerConfig.builder());
+        EmbeddedChannel channel = new EmbeddedChannel(new ClosedAtHead(), new WebSocket08FrameEncoder(false));
+        channels.add(channel);
+        channel.attr(WireFormat.ATTRIBUTE_KEY).set(format);
+        Session session = manager.createSession(channel, ClientType.AGENT, null);
+
+        Message message = MessageFactory.createResponse("req-1",
+                JsonNodeFactory.instance.objectNode().put("title", "Home"));
+        message.setSessionId(session.getSessionId());
+        assertTrue(manager.sendToSession(session, message));
+
+        List<byte[]> buffered = session.getReplayBuffer().drain();
+        assertEquals(1, buffered.size());
+        MessageCodec codec = MessageCodec.getInstance();
+        Message replayed = codec.decode(Unpooled.wrappedBuffer(buffered.get(0)), WireFormat.JSON).orElseThrow();
+        assertEquals(message.getMessageId(), replayed.getMessageId());
+        assertEquals("Home", replayed.getPayload().path("title").asText());
+        if (format == WireFormat.JSON) {
+            assertArrayEquals(codec.encodeBytes(message), buffered.get(0));
+        }
+    }
+
+    /**
+     * Fails every write at the head of the pipeline, as a channel that
+     * closed after the write was issued does.
+     */
+    private static final class ClosedAtHead extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            promise.setFailure(new ClosedChannelException());
+        }
+    }
+
+    @Test
+    void snapshotRestoresSessionsAcrossRestart(@TempDir Path dir) {
+        ServerConfig.Builder config = ServerConfig.builder()
+                .sessionRetentionSeconds(60)
+                .sessionSnapshotPath(dir.resolve("sessions.smile").toString());
+
+        SessionManager before = newManager(config);
+        Session agent = before.createSession(channel(), ClientType.AGENT, "user-a");
+        Session extension = before.createSession(channel(), ClientType.EXTENSION, "user-a");
+        before.saveSnapshot();
+        before.closeAllSessions();
+        assertTrue(Files.exists(dir.resolve("sessions.smile")));
+
+        SessionManager after = newManager(config);
+        after.restoreSnapshot();
+        assertFalse(Files.exists(dir.resolve("sessions.smile")));
+
+        Session restored = after.getSessionById(agent.getSessionId()).orElseThrow();
+        assertEquals(SessionState.DISCONNECTED, restored.getState());
+        assertEquals(ClientType.AGENT, restored.getClientType());
+        assertEquals("user-a", restored.getAffinityKey());
+        assertEquals(extension.getSessionId(), restored.getPairedSessionId());
+        assertTrue(restored.matchesResumeToken(agent.getResumeToken()));
+        assertNotNull(restored.getRetentionDeadline());
+
+        assertTrue(after.handleReconnect(channel(), agent.getSessionId()));
+        assertEquals(SessionState.PAIRED, restored.getState());
+        after.shutdown();
+    }
+
+    @Test
+    void expiredSessionsAndTheirPairingsAreNotRestored(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("sessions.smile");
+        long now = System.currentTimeMillis();
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setTakenAtMillis(now);
+        snapshot.getSessions().add(entry("agent-1", ClientType.AGENT, "extension-1", now + 60_000));
+        snapshot.getSessions().add(entry("extension-1", ClientType.EXTENSION, "agent-1", now - 1_000));
+        SessionSnapshot.write(path, snapshot);
+
+        SessionManager manager = newManager(ServerConfig.builder().sessionSnapshotPath(path.toString()));
+        manager.restoreSnapshot();
+
+        assertTrue(manager.getSessionById("extension-1").isEmpty());
+        Session agent = manager.getSessionById("agent-1").orElseThrow();
+        assertNull(agent.getPairedSessionId());
+        assertTrue(agent.matchesResumeToken("token-agent-1"));
+        manager.shutdown();
+    }
+
+    @Test
+    void snapshotOfAnotherVersionIsIgnored(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("sessions.smile");
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.setVersion(99);
+        snapshot.getSessions().add(entry("agent-1", ClientType.AGENT, null, System.currentTimeMillis() + 60_000));
+        SessionSnapshot.write(path, snapshot);
+
+        assertNull(SessionSnapshot.readAndDelete(path));
+        assertFalse(Files.exists(path));
+    }
+
+    @Test
+    void snapshotIsReadableByOwnerOnly(@TempDir Path dir) throws Exception {
+        assumeTrue(dir.getFileSystem().supportedFileAttributeViews().contains("posix"));
+        Path path = dir.resolve("sessions.smile");
+        SessionSnapshot snapshot = new SessionSnapshot();
+        snapshot.getSessions().add(entry("agent-1", ClientType.AGENT, null, System.currentTimeMillis() + 60_000));
+
+        SessionSnapshot.write(path, snapshot);
+
+        assertEquals(PosixFilePermissions.fromString("rw-------"), Files.getPosixFilePermissions(path));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(path), files.toList()); // no temp file left behind
+        }
+    }
+
+    private static SessionSnapshot.Entry entry(String sessionId, ClientType type, String pairedSessionId,
+                                               long deadlineMillis) {
+        SessionSnapshot.Entry entry = new SessionSnapshot.Entry();
+        entry.setSessionId(sessionId);
+        entry.setResumeToken("token-" + sessionId);
+        entry.setClientType(type);
+        entry.setPairedSessionId(pairedSessionId);
+        entry.setRetentionDeadlineMillis(deadlineMillis);
+        return entry;
+    }
+}